@@ -0,0 +1,149 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the {@link SectionIndex} behind
+ * {@link StickyListHeadersAdapterWrapper}, which is where its position
+ * translation and header counting happen. The wrapper itself extends Android
+ * classes and can't run on a plain JVM, the table doesn't use any.
+ * <p>
+ * Run with <code>java -jar benchmarks/target/benchmarks.jar -prof gc</code>
+ * to have the allocation rate reported as well.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SectionIndexBenchmark {
+
+	private static final int CHUNK_SIZE = 1024;
+
+	@Param({ "1000", "100000", "10000000" })
+	public int rowCount;
+
+	@Param({ "1", "10", "1000" })
+	public int rowsPerSection;
+
+	@Param({ "true", "false" })
+	public boolean dividerRows;
+
+	private final long[] headerIds = new long[CHUNK_SIZE];
+	private SectionIndex sectionIndex;
+	private int wrappedCount;
+	private int position;
+
+	/**
+	 * Reported next to the score, per row of the data set.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class RetainedBytes {
+		public double retainedBytesPerRow;
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		sectionIndex = new SectionIndex();
+		sectionIndex.setDividerRows(dividerRows);
+		scan(sectionIndex);
+		wrappedCount = sectionIndex.getWrappedCount();
+	}
+
+	/**
+	 * What the wrapper does when it counts the headers of a changed data set.
+	 */
+	@Benchmark
+	public int countHeaders(RetainedBytes retainedBytes) {
+		SectionIndex sectionIndex = new SectionIndex();
+		sectionIndex.setDividerRows(dividerRows);
+		scan(sectionIndex);
+		// an int and a long per section
+		retainedBytes.retainedBytesPerRow = sectionIndex.getCapacity() * 12.0
+				/ rowCount;
+		return sectionIndex.getHeaderCount();
+	}
+
+	/**
+	 * The lookup behind getItemViewType(), walking the list like a scroll
+	 * does.
+	 */
+	@Benchmark
+	public int getMappedPosition() {
+		return sectionIndex.getMappedPosition(nextPosition());
+	}
+
+	/**
+	 * The same lookup at positions far apart, which can't use the hint from
+	 * the previous lookup.
+	 */
+	@Benchmark
+	public int getMappedPositionRandomAccess() {
+		return sectionIndex.getMappedPosition(nextRandomPosition());
+	}
+
+	/**
+	 * The lookup behind getRealPositionDisregardingHeadersAndDividers().
+	 */
+	@Benchmark
+	public int getRealPosition() {
+		return sectionIndex.getRealPosition(nextPosition());
+	}
+
+	@Benchmark
+	public int getRealPositionRandomAccess() {
+		return sectionIndex.getRealPosition(nextRandomPosition());
+	}
+
+	/**
+	 * What getCount() answers once the table is known.
+	 */
+	@Benchmark
+	public int getWrappedCount() {
+		return sectionIndex.getWrappedCount();
+	}
+
+	private void scan(SectionIndex sectionIndex) {
+		sectionIndex.reset(rowCount);
+		for (int i = 0; i < rowCount; i += CHUNK_SIZE) {
+			int count = Math.min(rowCount - i, CHUNK_SIZE);
+			for (int j = 0; j < count; j++) {
+				headerIds[j] = (i + j) / rowsPerSection;
+			}
+			sectionIndex.appendItems(headerIds, count);
+		}
+	}
+
+	private int nextPosition() {
+		int position = this.position + 1;
+		if (position == wrappedCount) {
+			position = 0;
+		}
+		this.position = position;
+		return position;
+	}
+
+	private int nextRandomPosition() {
+		// a large stride lands far from the previous position
+		int position = (int) ((this.position + 7919L * 65537L) % wrappedCount);
+		this.position = position;
+		return position;
+	}
+
+}
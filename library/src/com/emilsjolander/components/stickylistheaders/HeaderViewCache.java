@@ -0,0 +1,118 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import android.view.View;
+
+/**
+ * A few sticky header views which are still bound to their sections, keyed by
+ * header id and evicted least recently used first. A header which is taken
+ * out of the cache can be shown again without being bound or measured.
+ */
+final class HeaderViewCache {
+
+	private long[] headerIds;
+	private View[] views;
+	private int size;
+
+	HeaderViewCache(int maxSize) {
+		headerIds = new long[maxSize];
+		views = new View[maxSize];
+	}
+
+	int getMaxSize() {
+		return views.length;
+	}
+
+	void setMaxSize(int maxSize) {
+		if (maxSize == views.length) {
+			return;
+		}
+		long[] newHeaderIds = new long[maxSize];
+		View[] newViews = new View[maxSize];
+		// keep the most recently used ones
+		int kept = Math.min(size, maxSize);
+		System.arraycopy(headerIds, size - kept, newHeaderIds, 0, kept);
+		System.arraycopy(views, size - kept, newViews, 0, kept);
+		headerIds = newHeaderIds;
+		views = newViews;
+		size = kept;
+	}
+
+	boolean contains(long headerId) {
+		for (int i = 0; i < size; i++) {
+			if (headerIds[i] == headerId) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the view which would be evicted by the next
+	 *         {@link #put(long, View)}, which is no longer cached, or null if
+	 *         there is still room
+	 */
+	View removeEldestIfFull() {
+		if (size < views.length) {
+			return null;
+		}
+		return removeEldest();
+	}
+
+	/**
+	 * @return the least recently used view, which is no longer cached, or null
+	 *         if the cache is empty
+	 */
+	View removeEldest() {
+		if (size == 0) {
+			return null;
+		}
+		View view = views[0];
+		remove(0);
+		return view;
+	}
+
+	/**
+	 * @return the view bound to the section with headerId, which is no longer
+	 *         cached, or null if there is none
+	 */
+	View get(long headerId) {
+		for (int i = size - 1; i >= 0; i--) {
+			if (headerIds[i] == headerId) {
+				View view = views[i];
+				remove(i);
+				return view;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Cache view as the most recently used one, bound to the section with
+	 * headerId.
+	 *
+	 * @return the view which no longer fits in the cache, to be rebound, or
+	 *         null
+	 */
+	View put(long headerId, View view) {
+		View evicted = get(headerId);
+		if (views.length == 0) {
+			return view;
+		}
+		if (size == views.length) {
+			evicted = views[0];
+			remove(0);
+		}
+		headerIds[size] = headerId;
+		views[size] = view;
+		size++;
+		return evicted;
+	}
+
+	private void remove(int index) {
+		size--;
+		System.arraycopy(headerIds, index + 1, headerIds, index, size - index);
+		System.arraycopy(views, index + 1, views, index, size - index);
+		views[size] = null;
+	}
+
+}
@@ -0,0 +1,399 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import java.util.Arrays;
+
+/**
+ * Run-length table of the sections of a {@link StickyListHeadersAdapter}.
+ * Only the first item position and the header id of each section are stored,
+ * wrapped positions (items plus the header and divider rows the
+ * {@link StickyListHeadersAdapterWrapper} inserts) are derived from those.
+ * <p>
+ * With divider rows every section of n items occupies 2n wrapped positions: a
+ * header followed by its items with a divider between each pair. Section s
+ * therefore starts at wrapped position 2 * (first item of s) and the whole list
+ * is exactly twice the item count long. Without divider rows a section of n
+ * items occupies n + 1 positions, section s starts at (first item of s) + s
+ * and the list is as long as the item and section counts together.
+ */
+final class SectionIndex {
+
+	static final int HEADER_POSITION = -1;
+	static final int DIVIDER_POSITION = -2;
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] sectionStarts = new int[INITIAL_CAPACITY];
+	private long[] headerIds = new long[INITIAL_CAPACITY];
+	private int sectionCount;
+	private int itemCount;
+	private int scannedCount;
+	private int lastSection;
+	private boolean dividerRows = true;
+
+	/**
+	 * Empty the table for a data set of itemCount items. The sections are
+	 * then discovered front to back through {@link #appendItem(long)}, lookups
+	 * are only valid for items which have been scanned.
+	 */
+	void reset(int itemCount) {
+		this.itemCount = itemCount;
+		sectionCount = 0;
+		scannedCount = 0;
+	}
+
+	/**
+	 * Keep the known sections as a stand-in for a data set which now has
+	 * itemCount items, while its real sections are built elsewhere. Items past
+	 * the scanned ones are looked up as part of the last known section.
+	 */
+	void truncate(int itemCount) {
+		this.itemCount = itemCount;
+		if (scannedCount > itemCount) {
+			sectionCount = getFirstSectionStartingAtOrAfter(itemCount);
+			scannedCount = itemCount;
+		}
+	}
+
+	/**
+	 * Add the next unscanned item of the data set to the table, starting a new
+	 * section if its header id differs from the one of the item before it.
+	 */
+	void appendItem(long headerId) {
+		if (sectionCount == 0 || headerIds[sectionCount - 1] != headerId) {
+			ensureCapacity(sectionCount + 1);
+			sectionStarts[sectionCount] = scannedCount;
+			headerIds[sectionCount] = headerId;
+			sectionCount++;
+		}
+		scannedCount++;
+	}
+
+	/**
+	 * Add the next count unscanned items to the table, their header ids are
+	 * the first count entries of headerIds.
+	 */
+	void appendItems(long[] headerIds, int count) {
+		for (int i = 0; i < count; i++) {
+			appendItem(headerIds[i]);
+		}
+	}
+
+	/**
+	 * Add the next itemCount unscanned items as one section, merging them into
+	 * the previous section if it has the same header id.
+	 */
+	void appendSection(int itemCount, long headerId) {
+		if (itemCount <= 0) {
+			return;
+		}
+		if (sectionCount == 0 || headerIds[sectionCount - 1] != headerId) {
+			ensureCapacity(sectionCount + 1);
+			sectionStarts[sectionCount] = scannedCount;
+			headerIds[sectionCount] = headerId;
+			sectionCount++;
+		}
+		scannedCount += itemCount;
+		if (scannedCount > this.itemCount) {
+			this.itemCount = scannedCount;
+		}
+	}
+
+	/**
+	 * Patch the table after the items in [from, from + oldCount) have been
+	 * replaced by newCount items, whose header ids are the first newCount
+	 * entries of newHeaderIds. Insertions and removals are replacements of
+	 * an empty range and by an empty range.
+	 * <p>
+	 * Only the sections around the replaced range are touched, the ones after
+	 * it are shifted. A change that reaches the end of the scanned items cuts
+	 * the table off at from instead, the rest is then discovered again.
+	 */
+	void replaceItems(int from, int oldCount, long[] newHeaderIds, int newCount) {
+		int delta = newCount - oldCount;
+		itemCount += delta;
+		if (from >= scannedCount) {
+			return;
+		}
+		int oldEnd = from + oldCount;
+		if (oldEnd >= scannedCount) {
+			sectionCount = getFirstSectionStartingAtOrAfter(from);
+			scannedCount = from;
+			return;
+		}
+
+		// the item after the range is untouched so it keeps its header id
+		long headerIdAfter = headerIds[getSectionForItem(oldEnd)];
+		int first = getFirstSectionStartingAtOrAfter(from);
+		int last = getFirstSectionStartingAtOrAfter(oldEnd + 1);
+
+		int added = countNewSections(first, newHeaderIds, newCount,
+				headerIdAfter);
+		int newSectionCount = sectionCount + added - (last - first);
+		ensureCapacity(newSectionCount);
+		System.arraycopy(sectionStarts, last, sectionStarts, first + added,
+				sectionCount - last);
+		System.arraycopy(headerIds, last, headerIds, first + added,
+				sectionCount - last);
+		for (int i = first + added; i < newSectionCount; i++) {
+			sectionStarts[i] += delta;
+		}
+
+		int section = first;
+		boolean hasPrevious = first > 0;
+		long previousHeaderId = hasPrevious ? headerIds[first - 1] : 0;
+		for (int i = 0; i < newCount; i++) {
+			long headerId = newHeaderIds[i];
+			if (!hasPrevious || headerId != previousHeaderId) {
+				sectionStarts[section] = from + i;
+				headerIds[section] = headerId;
+				section++;
+				hasPrevious = true;
+				previousHeaderId = headerId;
+			}
+		}
+		if (!hasPrevious || headerIdAfter != previousHeaderId) {
+			sectionStarts[section] = from + newCount;
+			headerIds[section] = headerIdAfter;
+		}
+
+		sectionCount = newSectionCount;
+		scannedCount += delta;
+	}
+
+	/**
+	 * @return the number of section starts needed for the replacement items
+	 *         and the untouched item following them
+	 */
+	private int countNewSections(int first, long[] newHeaderIds, int newCount,
+			long headerIdAfter) {
+		int count = 0;
+		boolean hasPrevious = first > 0;
+		long previousHeaderId = hasPrevious ? headerIds[first - 1] : 0;
+		for (int i = 0; i < newCount; i++) {
+			long headerId = newHeaderIds[i];
+			if (!hasPrevious || headerId != previousHeaderId) {
+				count++;
+				hasPrevious = true;
+				previousHeaderId = headerId;
+			}
+		}
+		if (!hasPrevious || headerIdAfter != previousHeaderId) {
+			count++;
+		}
+		return count;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > sectionStarts.length) {
+			capacity = Math.max(capacity, sectionStarts.length * 2);
+			sectionStarts = Arrays.copyOf(sectionStarts, capacity);
+			headerIds = Arrays.copyOf(headerIds, capacity);
+		}
+	}
+
+	private int getFirstSectionStartingAtOrAfter(int itemPosition) {
+		int low = 0;
+		int high = sectionCount;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (sectionStarts[mid] < itemPosition) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return the number of sections there is room for without growing
+	 */
+	int getCapacity() {
+		return sectionStarts.length;
+	}
+
+	int getItemCount() {
+		return itemCount;
+	}
+
+	int getScannedCount() {
+		return scannedCount;
+	}
+
+	boolean isFullyScanned() {
+		return scannedCount == itemCount;
+	}
+
+	int getSectionCount() {
+		return sectionCount;
+	}
+
+	void setDividerRows(boolean dividerRows) {
+		this.dividerRows = dividerRows;
+	}
+
+	boolean hasDividerRows() {
+		return dividerRows;
+	}
+
+	/**
+	 * Without divider rows this is only the total once the table
+	 * {@link #isFullyScanned()}.
+	 */
+	int getWrappedCount() {
+		if (dividerRows) {
+			return itemCount * 2;
+		}
+		return itemCount + sectionCount;
+	}
+
+	/**
+	 * @return the wrapped position of the header of section
+	 */
+	int getWrappedSectionStart(int section) {
+		if (dividerRows) {
+			return sectionStarts[section] * 2;
+		}
+		return sectionStarts[section] + section;
+	}
+
+	int getSectionStart(int section) {
+		return sectionStarts[section];
+	}
+
+	long getHeaderIdOfSection(int section) {
+		return headerIds[section];
+	}
+
+	/**
+	 * @return the section containing the item at itemPosition, which must
+	 *         have been scanned
+	 */
+	int getSectionForItem(int itemPosition) {
+		// lookups come in runs of neighbouring positions, mostly from the
+		// same section as the one before
+		int section = lastSection;
+		if (section < sectionCount
+				&& sectionStarts[section] <= itemPosition
+				&& (section + 1 == sectionCount
+						|| sectionStarts[section + 1] > itemPosition)) {
+			return section;
+		}
+		int low = 0;
+		int high = sectionCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (sectionStarts[mid] <= itemPosition) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		lastSection = low;
+		return low;
+	}
+
+	int getSectionForWrappedPosition(int wrappedPosition) {
+		if (dividerRows) {
+			return getSectionForItem(wrappedPosition >> 1);
+		}
+		int section = lastSection;
+		if (section < sectionCount
+				&& getWrappedSectionStart(section) <= wrappedPosition
+				&& (section + 1 == sectionCount
+						|| getWrappedSectionStart(section + 1) > wrappedPosition)) {
+			return section;
+		}
+		int low = 0;
+		int high = sectionCount - 1;
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (sectionStarts[mid] + mid <= wrappedPosition) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		lastSection = low;
+		return low;
+	}
+
+	/**
+	 * @return the wrapped position the item at itemPosition is shown at,
+	 *         which must have been scanned
+	 */
+	int getWrappedPosition(int itemPosition) {
+		if (dividerRows) {
+			return itemPosition * 2 + 1;
+		}
+		return itemPosition + getSectionForItem(itemPosition) + 1;
+	}
+
+	/**
+	 * @return the first section with headerId, or -1 if no scanned section
+	 *         has it
+	 */
+	int getSectionWithHeaderId(long headerId) {
+		for (int i = 0; i < sectionCount; i++) {
+			if (headerIds[i] == headerId) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the item position shown at wrappedPosition, or
+	 *         {@link #HEADER_POSITION} / {@link #DIVIDER_POSITION} if a
+	 *         header or divider is shown there
+	 */
+	int getMappedPosition(int wrappedPosition) {
+		int section = getSectionForWrappedPosition(wrappedPosition);
+		int start = sectionStarts[section];
+		int offset = wrappedPosition - getWrappedSectionStart(section);
+		if (offset == 0) {
+			return HEADER_POSITION;
+		}
+		if (!dividerRows) {
+			return start + offset - 1;
+		}
+		if ((offset & 1) == 0) {
+			return DIVIDER_POSITION;
+		}
+		return start + (offset >> 1);
+	}
+
+	/**
+	 * @return the item position at wrappedPosition, headers resolve to the
+	 *         first item of their section and dividers to the item above them
+	 */
+	int getRealPosition(int wrappedPosition) {
+		int section = getSectionForWrappedPosition(wrappedPosition);
+		int start = sectionStarts[section];
+		int offset = wrappedPosition - getWrappedSectionStart(section);
+		if (offset == 0) {
+			return start;
+		}
+		if (!dividerRows) {
+			return start + offset - 1;
+		}
+		return start + ((offset - 1) >> 1);
+	}
+
+	/**
+	 * Only the total once the table {@link #isFullyScanned()}.
+	 */
+	int getHeaderCount() {
+		return sectionCount;
+	}
+
+	/**
+	 * Only the total once the table {@link #isFullyScanned()}.
+	 */
+	int getDividerCount() {
+		if (!dividerRows) {
+			return 0;
+		}
+		return scannedCount - sectionCount;
+	}
+
+}
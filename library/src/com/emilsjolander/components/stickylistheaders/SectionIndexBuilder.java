@@ -0,0 +1,128 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+/**
+ * Builds a complete {@link SectionIndex} on a background thread and hands it
+ * to a {@link Callback} on the main thread. The header ids are read from a
+ * snapshot, never from the adapter itself. Only the result of the most recent
+ * call to
+ * {@link #build(StickyListHeadersSnapshotAdapter.HeaderIdSnapshot, int, Callback)}
+ * is ever published, older builds are abandoned as soon as they notice.
+ */
+final class SectionIndexBuilder {
+
+	interface Callback {
+		void onSectionIndexBuilt(SectionIndex sectionIndex);
+	}
+
+	/**
+	 * Number of header ids read at a time, also how often the build checks if
+	 * it has been abandoned.
+	 */
+	private static final int CHUNK_SIZE = 1024;
+
+	private static ExecutorService executor;
+
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private volatile int generation;
+	private boolean building;
+
+	/**
+	 * Start building the sections of the first itemCount items of snapshot,
+	 * which is released on the main thread once the build is over.
+	 */
+	void build(
+			final StickyListHeadersSnapshotAdapter.HeaderIdSnapshot snapshot,
+			final int itemCount, final Callback callback) {
+		final int buildGeneration = ++generation;
+		building = true;
+		getExecutor().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				SectionIndex sectionIndex = new SectionIndex();
+				sectionIndex.reset(itemCount);
+				long[] headerIds = new long[CHUNK_SIZE];
+				RuntimeException error = null;
+				try {
+					for (int i = 0; i < itemCount; i += CHUNK_SIZE) {
+						if (buildGeneration != generation) {
+							break;
+						}
+						int count = Math.min(itemCount - i, CHUNK_SIZE);
+						snapshot.getHeaderIds(i, count, headerIds);
+						sectionIndex.appendItems(headerIds, count);
+					}
+				} catch (RuntimeException e) {
+					error = e;
+				}
+				publish(buildGeneration, snapshot, sectionIndex, error,
+						callback);
+			}
+		});
+	}
+
+	/**
+	 * Releases the snapshot and, unless the build has been abandoned, hands
+	 * over its result or rethrows where a synchronous build would have thrown.
+	 */
+	private void publish(final int buildGeneration,
+			final StickyListHeadersSnapshotAdapter.HeaderIdSnapshot snapshot,
+			final SectionIndex sectionIndex, final RuntimeException error,
+			final Callback callback) {
+		mainHandler.post(new Runnable() {
+
+			@Override
+			public void run() {
+				snapshot.release();
+				if (buildGeneration != generation) {
+					return;
+				}
+				if (error != null) {
+					throw error;
+				}
+				building = false;
+				callback.onSectionIndexBuilt(sectionIndex);
+			}
+		});
+	}
+
+	void cancel() {
+		generation++;
+		building = false;
+	}
+
+	boolean isBuilding() {
+		return building;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(final Runnable r) {
+					Thread thread = new Thread(new Runnable() {
+
+						@Override
+						public void run() {
+							Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+							r.run();
+						}
+					}, "StickyListHeaders sections");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return executor;
+	}
+
+}
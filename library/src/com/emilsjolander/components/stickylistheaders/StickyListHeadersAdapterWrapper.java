@@ -1,16 +1,18 @@
 package com.emilsjolander.components.stickylistheaders;
 
-import java.util.WeakHashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 import android.content.Context;
 import android.database.DataSetObserver;
 import android.graphics.drawable.Drawable;
-import android.util.SparseIntArray;
+import android.util.SparseArray;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.AbsListView;
 import android.widget.BaseAdapter;
 import android.widget.ListAdapter;
+import android.widget.SectionIndexer;
 
 /**
  * A {@link ListAdapter} which wraps a {@link StickyListHeadersAdapter} and
@@ -19,28 +21,122 @@ import android.widget.ListAdapter;
  * and
  * {@link StickyListHeadersAdapter#getHeaderView(int, android.view.View, android.view.ViewGroup)}
  * appropriately.
+ * <p>
+ * It is a {@link SectionIndexer} for fast scrolling, passing through to the
+ * delegate if that is one. Otherwise its sections are the delegate's, each
+ * labelled with a blank the fast scroller doesn't show.
  * 
  * @author Jake Wharton (jakewharton@gmail.com)
  */
 final class StickyListHeadersAdapterWrapper extends BaseAdapter implements
-		StickyListHeadersAdapter {
+		StickyListHeadersAdapter, SectionIndexer {
 
 	static final int VIEW_TYPE_DIVIDER_OFFSET = 1;
 	static final int VIEW_TYPE_HEADER_OFFSET = 0;
 	private static final int EXTRA_VIEW_TYPE_COUNT = 2;
-	private static final int HEADER_POSITION = -1;
-	private static final int DIVIDER_POSITION = -2;
+	private static final int SCAN_CHUNK_SIZE = 32;
+	private static final int MAX_SPARE_HEADERS = 2;
+	private static final String TRACE_SECTION_INDEX = "StickyListHeaders index";
+	private static final String TRACE_SECTION_SCAN = "StickyListHeaders scan";
+	// the fast scroller shows no overlay for a section labelled with a space
+	private static final String BLANK_SECTION_LABEL = " ";
 
 	private final Context context;
 	private final StickyListHeadersAdapter delegate;
 	private Drawable divider;
 	private int dividerHeight;
-	private WeakHashMap<View, Void> headers = new WeakHashMap<View, Void>();
-	private SparseIntArray positionMapping = new SparseIntArray();
+	private boolean dividerRows = true;
+	private boolean headerRows = true;
+	private View.OnClickListener headerClickListener;
+	private SectionIndex sectionIndex = new SectionIndex();
+	private SectionIndexBuilder sectionIndexBuilder;
 	int dividerViewType;
 	int headerViewType;
-	private int headerCount;
-	private int dividerCount;
+	private boolean positionMappingDirty = true;
+	private boolean positionMappingPatched;
+	private long[] headerIdBuffer = new long[SCAN_CHUNK_SIZE];
+	private int observerCount;
+	private final View[] spareHeaders = new View[MAX_SPARE_HEADERS];
+	private int spareHeaderCount;
+	private StickyListHeadersListView.MetricsListener metricsListener;
+	private long sectionIndexBuildStart;
+	private final SparseArray<ArrayList<View>> warmViews = new SparseArray<ArrayList<View>>();
+	private int warmHeadersLeft;
+	private int warmItemsLeft;
+	private int warmDividersLeft;
+	private int warmItemPosition;
+	private String[] sectionLabels = new String[0];
+
+	/**
+	 * Listens to the delegate so the position mapping is only rebuilt after
+	 * the data set has actually changed, the change is then forwarded to our
+	 * own observers once the mapping is known to be stale.
+	 */
+	private DataSetObserver delegateObserver = new DataSetObserver() {
+
+		@Override
+		public void onChanged() {
+			if (positionMappingPatched) {
+				positionMappingPatched = false;
+			} else {
+				invalidatePositionMapping();
+			}
+			StickyListHeadersAdapterWrapper.super.notifyDataSetChanged();
+		}
+
+		@Override
+		public void onInvalidated() {
+			positionMappingPatched = false;
+			invalidatePositionMapping();
+			StickyListHeadersAdapterWrapper.super.notifyDataSetInvalidated();
+		}
+	};
+
+	/**
+	 * Swaps in a section table built in the background and lets the list lay
+	 * itself out again with the real sections.
+	 */
+	private SectionIndexBuilder.Callback sectionIndexBuiltCallback = new SectionIndexBuilder.Callback() {
+
+		@Override
+		public void onSectionIndexBuilt(SectionIndex sectionIndex) {
+			if (observerCount > 0) {
+				if (metricsListener != null) {
+					metricsListener.onSectionIndexBuilt(
+							sectionIndex.getItemCount(), System.nanoTime()
+									- sectionIndexBuildStart);
+				}
+				sectionIndex.setDividerRows(hasDividerRows());
+				StickyListHeadersAdapterWrapper.this.sectionIndex = sectionIndex;
+				StickyListHeadersAdapterWrapper.super.notifyDataSetChanged();
+			}
+		}
+	};
+
+	/**
+	 * Patches the position mapping when the delegate says which items changed,
+	 * the onChanged() call which follows then doesn't throw the mapping away.
+	 */
+	private StickyListHeadersBaseAdapter.ItemRangeObserver itemRangeObserver = new StickyListHeadersBaseAdapter.ItemRangeObserver() {
+
+		@Override
+		public void onItemRangeReplaced(int positionStart, int oldItemCount,
+				int newItemCount) {
+			if (!positionMappingDirty && !isBuildingSections()) {
+				replaceItems(positionStart, oldItemCount, newItemCount);
+				positionMappingPatched = true;
+			}
+		}
+
+		@Override
+		public void onItemMoved(int fromPosition, int toPosition) {
+			if (!positionMappingDirty && !isBuildingSections()) {
+				replaceItems(fromPosition, 1, 0);
+				replaceItems(toPosition, 0, 1);
+				positionMappingPatched = true;
+			}
+		}
+	};
 
 	StickyListHeadersAdapterWrapper(Context context,
 			StickyListHeadersAdapter delegate) {
@@ -56,8 +152,97 @@ final class StickyListHeadersAdapterWrapper extends BaseAdapter implements
 		this.dividerHeight = dividerHeight;
 	}
 
-	boolean isHeader(View v) {
-		return headers.containsKey(v);
+	/**
+	 * Without divider rows only headers are inserted between the items and
+	 * the list draws the dividers itself.
+	 */
+	void setDividerRows(boolean dividerRows) {
+		if (this.dividerRows != dividerRows) {
+			this.dividerRows = dividerRows;
+			sectionIndex.setDividerRows(hasDividerRows());
+			super.notifyDataSetChanged();
+		}
+	}
+
+	/**
+	 * Without header rows the delegate's positions are passed through as they
+	 * are and the first item of every section is wrapped in a
+	 * {@link WrapperView} together with the section's header. There are no
+	 * divider rows either then.
+	 */
+	void setHeaderRows(boolean headerRows) {
+		if (this.headerRows != headerRows) {
+			this.headerRows = headerRows;
+			sectionIndex.setDividerRows(hasDividerRows());
+			super.notifyDataSetChanged();
+		}
+	}
+
+	boolean hasHeaderRows() {
+		return headerRows;
+	}
+
+	private boolean hasDividerRows() {
+		return dividerRows && headerRows;
+	}
+
+	/**
+	 * Set on the headers inside {@link WrapperView}s.
+	 */
+	void setHeaderClickListener(View.OnClickListener headerClickListener) {
+		this.headerClickListener = headerClickListener;
+	}
+
+	void setMetricsListener(
+			StickyListHeadersListView.MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
+	/**
+	 * In async mode a changed data set keeps being shown with the previous
+	 * sections, cut down to the new item count, until its own sections have
+	 * been built in the background. Only a
+	 * {@link StickyListHeadersSnapshotAdapter} is built in the background, from
+	 * its snapshot, other delegates are scanned as usual.
+	 */
+	void setBuildingSectionsAsync(boolean async) {
+		if (async && sectionIndexBuilder == null) {
+			sectionIndexBuilder = new SectionIndexBuilder();
+		} else if (!async && sectionIndexBuilder != null) {
+			if (sectionIndexBuilder.isBuilding()) {
+				// the current table is only a stand-in
+				positionMappingDirty = true;
+			}
+			sectionIndexBuilder.cancel();
+			sectionIndexBuilder = null;
+		}
+	}
+
+	private boolean isBuildingSections() {
+		return sectionIndexBuilder != null && sectionIndexBuilder.isBuilding();
+	}
+
+	private void invalidatePositionMapping() {
+		positionMappingDirty = true;
+		if (sectionIndexBuilder != null) {
+			sectionIndexBuilder.cancel();
+		}
+	}
+
+	/**
+	 * Whether a header is shown at position, answered from the section table
+	 * so it costs no more than a comparison when asked about neighbouring
+	 * positions in turn. Without header rows this is whether the item at
+	 * position is shown with its section's header.
+	 */
+	boolean isHeader(int position) {
+		ensureWrappedPositionScanned(position);
+		if (!headerRows) {
+			return sectionIndex.getSectionStart(sectionIndex
+					.getSectionForItem(position)) == position;
+		}
+		return sectionIndex.getMappedPosition(position)
+				== SectionIndex.HEADER_POSITION;
 	}
 
 	@Override
@@ -81,48 +266,225 @@ final class StickyListHeadersAdapterWrapper extends BaseAdapter implements
 
 	@Override
 	public void registerDataSetObserver(DataSetObserver observer) {
-		delegate.registerDataSetObserver(observer);
+		super.registerDataSetObserver(observer);
+		if (observerCount++ == 0) {
+			// changes made while nobody was listening went unnoticed
+			positionMappingDirty = true;
+			delegate.registerDataSetObserver(delegateObserver);
+			if (delegate instanceof StickyListHeadersBaseAdapter) {
+				((StickyListHeadersBaseAdapter) delegate)
+						.registerItemRangeObserver(itemRangeObserver);
+			}
+		}
 	}
 
 	@Override
 	public void unregisterDataSetObserver(DataSetObserver observer) {
-		delegate.unregisterDataSetObserver(observer);
+		super.unregisterDataSetObserver(observer);
+		if (--observerCount == 0) {
+			invalidatePositionMapping();
+			delegate.unregisterDataSetObserver(delegateObserver);
+			if (delegate instanceof StickyListHeadersBaseAdapter) {
+				((StickyListHeadersBaseAdapter) delegate)
+						.unregisterItemRangeObserver(itemRangeObserver);
+			}
+		}
 	}
 
 	@Override
 	public int getCount() {
-		positionMapping.clear();
-		countHeadersAndUpdatePositionMapping();
-		return delegate.getCount() + headerCount + dividerCount;
+		if (!headerRows) {
+			ensurePositionMapping();
+			return sectionIndex.getItemCount();
+		}
+		if (dividerRows) {
+			ensurePositionMapping();
+		} else {
+			// the count depends on the number of sections
+			countHeadersAndUpdatePositionMapping();
+		}
+		return sectionIndex.getWrappedCount();
 	}
 
-	private void countHeadersAndUpdatePositionMapping() {
-		int headerCount = 1;
-		int dividerCount = 0;
-		int itemCount = delegate.getCount();
-		long lastHeaderId = delegate.getHeaderId(0);
-		positionMapping.put(0, HEADER_POSITION);
-		positionMapping.put(1, 0);
-		for (int i = 1; i < itemCount; i++) {
-			long headerId = delegate.getHeaderId(i);
-			if (lastHeaderId != headerId) {
-				lastHeaderId = headerId;
-				positionMapping.put(i + headerCount + dividerCount,
-						HEADER_POSITION);
-				headerCount++;
+	/**
+	 * Starts a new position mapping if the delegate has changed since the
+	 * current one was started. Without a registered observer changes can't be
+	 * detected so the mapping is restarted on every call.
+	 * <p>
+	 * The mapping itself is discovered lazily, see
+	 * {@link #ensureItemScanned(int)}, built in the background from a
+	 * {@link StickyListHeadersSnapshotAdapter}, see
+	 * {@link #setBuildingSectionsAsync(boolean)}, or read from a
+	 * {@link StickyListHeadersSectionedAdapter}. With divider rows the count
+	 * doesn't depend on it since every item adds exactly one header or divider
+	 * row.
+	 */
+	private void ensurePositionMapping() {
+		if (positionMappingDirty || observerCount == 0) {
+			positionMappingDirty = false;
+			int itemCount = delegate.getCount();
+			if (delegate instanceof StickyListHeadersSectionedAdapter) {
+				long start = metricsListener != null ? Tracing
+						.begin(TRACE_SECTION_INDEX) : 0;
+				sectionIndex.reset(itemCount);
+				readSections((StickyListHeadersSectionedAdapter) delegate);
+				if (metricsListener != null) {
+					metricsListener.onSectionIndexBuilt(itemCount,
+							Tracing.end(start));
+				}
+			} else if (sectionIndexBuilder != null && observerCount > 0
+					&& delegate instanceof StickyListHeadersSnapshotAdapter) {
+				buildSectionsAsync(itemCount);
 			} else {
-				positionMapping.put(i + headerCount + dividerCount,
-						DIVIDER_POSITION);
-				dividerCount++;
+				sectionIndex.reset(itemCount);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the current table, cut down to itemCount, while the new one is
+	 * built from a snapshot of the delegate's header ids.
+	 */
+	private void buildSectionsAsync(int itemCount) {
+		StickyListHeadersSnapshotAdapter.HeaderIdSnapshot snapshot = ((StickyListHeadersSnapshotAdapter) delegate)
+				.getHeaderIdSnapshot();
+		if (snapshot == null) {
+			sectionIndexBuilder.cancel();
+			sectionIndex.reset(itemCount);
+			return;
+		}
+		sectionIndexBuildStart = System.nanoTime();
+		sectionIndex.truncate(itemCount);
+		if (sectionIndex.getSectionCount() == 0 && itemCount > 0) {
+			sectionIndex.appendItem(delegate.getHeaderId(0));
+		}
+		sectionIndexBuilder.build(snapshot, itemCount,
+				sectionIndexBuiltCallback);
+	}
+
+	/**
+	 * Takes the sections straight from a delegate which knows them, without
+	 * looking at a single item. Should they not cover all items the rest is
+	 * scanned as usual.
+	 */
+	private void readSections(StickyListHeadersSectionedAdapter sectioned) {
+		int itemCount = sectionIndex.getItemCount();
+		int sectionCount = sectioned.getSectionCount();
+		for (int i = 0; i < sectionCount; i++) {
+			int start = sectioned.getSectionStart(i);
+			int end = i + 1 < sectionCount ? sectioned.getSectionStart(i + 1)
+					: itemCount;
+			end = Math.min(end, itemCount);
+			if (start != sectionIndex.getScannedCount() || end < start) {
+				// not a valid partition, fall back to scanning from here
+				return;
 			}
-			positionMapping.put(i + headerCount + dividerCount, i);
+			sectionIndex.appendSection(end - start,
+					sectioned.getSectionHeaderId(i));
+		}
+	}
+
+	/**
+	 * Makes sure the sections are known up to and including the item at
+	 * itemPosition. Rows are scanned in chunks of {@link #SCAN_CHUNK_SIZE} so
+	 * a list which is scrolled through a row at a time doesn't go back to the
+	 * delegate for every new row.
+	 */
+	private void ensureItemScanned(int itemPosition) {
+		ensurePositionMapping();
+		if (isBuildingSections()) {
+			return;
+		}
+		int scanned = sectionIndex.getScannedCount();
+		if (itemPosition < scanned || sectionIndex.isFullyScanned()) {
+			return;
+		}
+		int end = Math.min(sectionIndex.getItemCount(),
+				Math.max(itemPosition + 1, scanned + SCAN_CHUNK_SIZE));
+		if (metricsListener == null) {
+			scanItems(end);
+			return;
+		}
+		long start = Tracing.begin(TRACE_SECTION_SCAN);
+		scanItems(end);
+		metricsListener.onSectionsScanned(end - scanned, Tracing.end(start));
+	}
+
+	/**
+	 * Appends the items up to end to the section table.
+	 */
+	private void scanItems(int end) {
+		int scanned = sectionIndex.getScannedCount();
+		while (scanned < end) {
+			int count = Math.min(end - scanned, headerIdBuffer.length);
+			readHeaderIds(delegate, scanned, count, headerIdBuffer);
+			sectionIndex.appendItems(headerIdBuffer, count);
+			scanned += count;
+		}
+	}
+
+	/**
+	 * Reads the header ids of count items starting at position into the
+	 * beginning of headerIds, in one call if the adapter supports that.
+	 */
+	private static void readHeaderIds(StickyListHeadersAdapter adapter,
+			int position, int count, long[] headerIds) {
+		if (adapter instanceof StickyListHeadersBulkAdapter) {
+			((StickyListHeadersBulkAdapter) adapter).getHeaderIds(position,
+					count, headerIds);
+		} else {
+			for (int i = 0; i < count; i++) {
+				headerIds[i] = adapter.getHeaderId(position + i);
+			}
+		}
+	}
+
+	private void ensureWrappedPositionScanned(int position) {
+		// a wrapped position never shows an item past its own value, or past
+		// half of it with divider rows
+		ensureItemScanned(hasDividerRows() ? position >> 1 : position);
+	}
+
+	/**
+	 * The new header ids are only read if the table reaches past the changed
+	 * range, otherwise it is cut off or left alone and scanned later.
+	 */
+	private void replaceItems(int positionStart, int oldItemCount,
+			int newItemCount) {
+		if (positionStart + oldItemCount < sectionIndex.getScannedCount()) {
+			if (headerIdBuffer.length < newItemCount) {
+				headerIdBuffer = new long[newItemCount];
+			}
+			if (newItemCount > 0) {
+				readHeaderIds(delegate, positionStart, newItemCount,
+						headerIdBuffer);
+			}
+		}
+		sectionIndex.replaceItems(positionStart, oldItemCount, headerIdBuffer,
+				newItemCount);
+	}
+
+	private void countHeadersAndUpdatePositionMapping() {
+		ensurePositionMapping();
+		if (sectionIndex.isFullyScanned() || isBuildingSections()) {
+			return;
+		}
+		int itemCount = sectionIndex.getItemCount();
+		if (metricsListener == null) {
+			scanItems(itemCount);
+			return;
 		}
-		this.dividerCount = dividerCount;
-		this.headerCount = headerCount;
+		long start = Tracing.begin(TRACE_SECTION_INDEX);
+		scanItems(itemCount);
+		metricsListener.onSectionIndexBuilt(itemCount, Tracing.end(start));
 	}
 
 	int getHeaderCount() {
-		return headerCount;
+		if (!headerRows) {
+			return 0;
+		}
+		countHeadersAndUpdatePositionMapping();
+		return sectionIndex.getHeaderCount();
 	}
 
 	@Override
@@ -151,26 +513,26 @@ final class StickyListHeadersAdapterWrapper extends BaseAdapter implements
 	}
 
 	int getRealPositionDisregardingHeadersAndDividers(int position) {
-		int viewType = getItemViewType(position);
-		if (viewType == headerViewType) {
-			return positionMapping.get(position + 1);
-		} else if (viewType == dividerViewType) {
-			return positionMapping.get(position - 1);
-		} else {
-			return positionMapping.get(position);
+		if (!headerRows) {
+			return position;
 		}
+		ensureWrappedPositionScanned(position);
+		return sectionIndex.getRealPosition(position);
 	}
 
 	@Override
 	public int getItemViewType(int position) {
+		if (!headerRows) {
+			return delegate.getItemViewType(position);
+		}
+		ensureWrappedPositionScanned(position);
+		position = sectionIndex.getMappedPosition(position);
 
-		position = positionMapping.get(position);
-
-		if (position == HEADER_POSITION) {
+		if (position == SectionIndex.HEADER_POSITION) {
 			return headerViewType;
 		}
 
-		if (position == DIVIDER_POSITION) {
+		if (position == SectionIndex.DIVIDER_POSITION) {
 			return dividerViewType;
 		}
 
@@ -192,21 +554,46 @@ final class StickyListHeadersAdapterWrapper extends BaseAdapter implements
 
 	@Override
 	public View getView(int position, View convertView, ViewGroup parent) {
+		if (!headerRows) {
+			return getWrapperView(position, convertView, parent);
+		}
 		final int viewType = getItemViewType(position);
 
 		if (viewType == headerViewType) {
-			headers.remove(convertView);
-			convertView = delegate
-					.getHeaderView(
-							getRealPositionDisregardingHeadersAndDividers(position),
-							convertView, parent);
-			headers.put(convertView, null);
+			// the header is wrapped so it can be lent to the sticky header
+			// while its row is under the top
+			WrapperView row = convertView instanceof WrapperView ? (WrapperView) convertView
+					: new WrapperView(context);
+			View header = getReusableHeader(row);
+			if (header == null) {
+				reportRecycleMiss(viewType);
+			}
+			header = delegate.getHeaderView(
+					getRealPositionDisregardingHeadersAndDividers(position),
+					header, parent);
+			// it may have been hidden under the sticky header before it was
+			// recycled
+			if (header.getVisibility() != View.VISIBLE) {
+				header.setVisibility(View.VISIBLE);
+			}
+			row.update(null, header);
+			convertView = row;
 		} else if (viewType == dividerViewType) {
 			if (convertView == null) {
+				convertView = takeWarmView(dividerViewType);
+			}
+			if (convertView == null) {
+				reportRecycleMiss(viewType);
 				convertView = makeDivider();
 			}
 			return convertView;
 		} else {
+			if (convertView == null) {
+				convertView = takeWarmView(viewType);
+			}
+			if (convertView == null) {
+				reportRecycleMiss(viewType);
+			}
 			convertView = delegate.getView(
 					getRealPositionDisregardingHeadersAndDividers(position),
 					convertView, parent);
@@ -214,6 +601,138 @@ final class StickyListHeadersAdapterWrapper extends BaseAdapter implements
 		return convertView;
 	}
 
+	private View getWrapperView(int position, View convertView,
+			ViewGroup parent) {
+		WrapperView row = convertView instanceof WrapperView ? (WrapperView) convertView
+				: new WrapperView(context);
+		View item = row.getItem();
+		if (item == null) {
+			item = takeWarmView(delegate.getItemViewType(position));
+		}
+		if (item == null) {
+			reportRecycleMiss(getItemViewType(position));
+		}
+		item = delegate.getView(position, item, parent);
+		View header = null;
+		if (isHeader(position)) {
+			header = delegate.getHeaderView(position, getReusableHeader(row),
+					parent);
+			header.setOnClickListener(headerClickListener);
+			if (header.getVisibility() != View.VISIBLE) {
+				header.setVisibility(View.VISIBLE);
+			}
+		}
+		row.update(item, header);
+		return row;
+	}
+
+	/**
+	 * Only views which have to be created are misses, not those taken from
+	 * the recycler, the spare headers or the views warmed up ahead of time.
+	 */
+	private void reportRecycleMiss(int viewType) {
+		if (metricsListener != null) {
+			metricsListener.onRecycleMiss(viewType);
+		}
+	}
+
+	/**
+	 * @return the header row had before, or else a spare one
+	 */
+	private View getReusableHeader(WrapperView row) {
+		View header = row.getReusableHeader();
+		if (header == null) {
+			header = takeSpareHeader();
+		}
+		return header;
+	}
+
+	/**
+	 * @return a header view which can be rebound, or null if there is none
+	 */
+	View takeSpareHeader() {
+		if (spareHeaderCount > 0) {
+			View header = spareHeaders[--spareHeaderCount];
+			spareHeaders[spareHeaderCount] = null;
+			return header;
+		}
+		return takeWarmView(headerViewType);
+	}
+
+	/**
+	 * Ask for views to be created ahead of time, through
+	 * {@link #warmUpNextView(ViewGroup)}. They are handed out whenever a view
+	 * of their type would otherwise have to be created.
+	 */
+	void warmUp(int headerCount, int itemCount, int dividerCount) {
+		warmHeadersLeft = headerCount;
+		warmItemsLeft = itemCount;
+		warmDividersLeft = dividerCount;
+		warmItemPosition = 0;
+	}
+
+	/**
+	 * Creates one of the views asked for by
+	 * {@link #warmUp(int, int, int)}. Items are created for the first
+	 * positions so their view types match the first rows.
+	 *
+	 * @return whether there are more to create
+	 */
+	boolean warmUpNextView(ViewGroup parent) {
+		// makes sure the header and divider view types are known
+		getViewTypeCount();
+		int itemCount = delegate.getCount();
+		if (warmHeadersLeft > 0 && itemCount > 0) {
+			warmHeadersLeft--;
+			addWarmView(headerViewType, delegate.getHeaderView(0, null, parent));
+		} else if (warmItemsLeft > 0 && warmItemPosition < itemCount) {
+			warmItemsLeft--;
+			int position = warmItemPosition++;
+			addWarmView(delegate.getItemViewType(position),
+					delegate.getView(position, null, parent));
+		} else if (warmDividersLeft > 0 && hasDividerRows()) {
+			warmDividersLeft--;
+			addWarmView(dividerViewType, makeDivider());
+		} else {
+			warmHeadersLeft = 0;
+			warmItemsLeft = 0;
+			warmDividersLeft = 0;
+			return false;
+		}
+		return true;
+	}
+
+	private void addWarmView(int viewType, View view) {
+		if (viewType == IGNORE_ITEM_VIEW_TYPE) {
+			return;
+		}
+		ArrayList<View> views = warmViews.get(viewType);
+		if (views == null) {
+			views = new ArrayList<View>();
+			warmViews.put(viewType, views);
+		}
+		views.add(view);
+	}
+
+	private View takeWarmView(int viewType) {
+		ArrayList<View> views = warmViews.get(viewType);
+		if (views == null || views.isEmpty()) {
+			return null;
+		}
+		return views.remove(views.size() - 1);
+	}
+
+	/**
+	 * Hand back a header view which is no longer used by the sticky header,
+	 * to be rebound in a row whose own header has been lent out. It is
+	 * dropped if enough are kept already.
+	 */
+	void addSpareHeader(View header) {
+		if (spareHeaderCount < spareHeaders.length) {
+			spareHeaders[spareHeaderCount++] = header;
+		}
+	}
+
 	@SuppressWarnings("deprecation")
 	private View makeDivider() {
 		View v = new View(context);
@@ -259,6 +778,23 @@ final class StickyListHeadersAdapterWrapper extends BaseAdapter implements
 		return delegate.toString();
 	}
 
+	/**
+	 * @return the position of the header of the section offset sections away
+	 *         from the one shown at position, or -1 if that section hasn't
+	 *         been discovered
+	 */
+	int getSectionHeaderPosition(int position, int offset) {
+		ensureWrappedPositionScanned(position);
+		int section = (headerRows ? sectionIndex
+				.getSectionForWrappedPosition(position) : sectionIndex
+				.getSectionForItem(position)) + offset;
+		if (section < 0 || section >= sectionIndex.getSectionCount()) {
+			return -1;
+		}
+		return headerRows ? sectionIndex.getWrappedSectionStart(section)
+				: sectionIndex.getSectionStart(section);
+	}
+
 	@Override
 	public View getHeaderView(int position, View convertView, ViewGroup parent) {
 		return delegate.getHeaderView(
@@ -268,8 +804,82 @@ final class StickyListHeadersAdapterWrapper extends BaseAdapter implements
 
 	@Override
 	public long getHeaderId(int position) {
-		return delegate
-				.getHeaderId(getRealPositionDisregardingHeadersAndDividers(position));
+		ensureWrappedPositionScanned(position);
+		int section = headerRows ? sectionIndex
+				.getSectionForWrappedPosition(position) : sectionIndex
+				.getSectionForItem(position);
+		return sectionIndex.getHeaderIdOfSection(section);
+	}
+
+	/**
+	 * @return the position of the header of the first section with headerId,
+	 *         or -1 if there is none
+	 */
+	int getHeaderPosition(long headerId) {
+		countHeadersAndUpdatePositionMapping();
+		int section = sectionIndex.getSectionWithHeaderId(headerId);
+		if (section < 0) {
+			return -1;
+		}
+		return headerRows ? sectionIndex.getWrappedSectionStart(section)
+				: sectionIndex.getSectionStart(section);
+	}
+
+	@Override
+	public Object[] getSections() {
+		if (delegate instanceof SectionIndexer) {
+			return ((SectionIndexer) delegate).getSections();
+		}
+		// header ids are no labels, but there has to be one for every section
+		// the lookups below return
+		countHeadersAndUpdatePositionMapping();
+		int sectionCount = sectionIndex.getSectionCount();
+		if (sectionLabels.length != sectionCount) {
+			sectionLabels = new String[sectionCount];
+			Arrays.fill(sectionLabels, BLANK_SECTION_LABEL);
+		}
+		return sectionLabels;
+	}
+
+	@Override
+	public int getPositionForSection(int section) {
+		if (delegate instanceof SectionIndexer) {
+			int itemPosition = ((SectionIndexer) delegate)
+					.getPositionForSection(section);
+			if (!headerRows) {
+				return itemPosition;
+			}
+			ensureItemScanned(itemPosition);
+			int wrappedSection = sectionIndex.getSectionForItem(itemPosition);
+			if (sectionIndex.getSectionStart(wrappedSection) == itemPosition) {
+				// land on the header rather than below it
+				return sectionIndex.getWrappedSectionStart(wrappedSection);
+			}
+			return sectionIndex.getWrappedPosition(itemPosition);
+		}
+		countHeadersAndUpdatePositionMapping();
+		int sectionCount = sectionIndex.getSectionCount();
+		if (sectionCount == 0) {
+			return 0;
+		}
+		section = Math.max(0, Math.min(section, sectionCount - 1));
+		return headerRows ? sectionIndex.getWrappedSectionStart(section)
+				: sectionIndex.getSectionStart(section);
+	}
+
+	@Override
+	public int getSectionForPosition(int position) {
+		if (delegate instanceof SectionIndexer) {
+			return ((SectionIndexer) delegate)
+					.getSectionForPosition(getRealPositionDisregardingHeadersAndDividers(position));
+		}
+		ensurePositionMapping();
+		if (sectionIndex.getItemCount() == 0) {
+			return 0;
+		}
+		ensureWrappedPositionScanned(position);
+		return headerRows ? sectionIndex.getSectionForWrappedPosition(position)
+				: sectionIndex.getSectionForItem(position);
 	}
 
 	StickyListHeadersAdapter getDelegate() {
@@ -0,0 +1,83 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import java.util.ArrayList;
+
+import android.widget.BaseAdapter;
+
+/**
+ * A {@link BaseAdapter} implementing {@link StickyListHeadersAdapter} which
+ * can tell a {@link StickyListHeadersListView} exactly which items changed.
+ * After a range notification only the sections around that range are looked
+ * at again, while {@link #notifyDataSetChanged()} makes the list rediscover
+ * all of them.
+ * <p>
+ * The range notifications must be called after the data set has been changed,
+ * positions are those of the items in the adapter, not the list.
+ */
+public abstract class StickyListHeadersBaseAdapter extends BaseAdapter
+		implements StickyListHeadersAdapter {
+
+	/**
+	 * Receives the range notifications, these are always followed by a call to
+	 * {@link android.database.DataSetObserver#onChanged()}.
+	 */
+	interface ItemRangeObserver {
+		void onItemRangeReplaced(int positionStart, int oldItemCount,
+				int newItemCount);
+
+		void onItemMoved(int fromPosition, int toPosition);
+	}
+
+	private final ArrayList<ItemRangeObserver> itemRangeObservers = new ArrayList<ItemRangeObserver>();
+
+	void registerItemRangeObserver(ItemRangeObserver observer) {
+		itemRangeObservers.add(observer);
+	}
+
+	void unregisterItemRangeObserver(ItemRangeObserver observer) {
+		itemRangeObservers.remove(observer);
+	}
+
+	/**
+	 * Notify that itemCount items have been inserted at positionStart.
+	 */
+	public void notifyItemRangeInserted(int positionStart, int itemCount) {
+		notifyItemRangeReplaced(positionStart, 0, itemCount);
+	}
+
+	/**
+	 * Notify that the itemCount items which were at positionStart have been
+	 * removed.
+	 */
+	public void notifyItemRangeRemoved(int positionStart, int itemCount) {
+		notifyItemRangeReplaced(positionStart, itemCount, 0);
+	}
+
+	/**
+	 * Notify that the itemCount items at positionStart have changed, this
+	 * includes changes to their header ids.
+	 */
+	public void notifyItemRangeChanged(int positionStart, int itemCount) {
+		notifyItemRangeReplaced(positionStart, itemCount, itemCount);
+	}
+
+	/**
+	 * Notify that the item at fromPosition has been moved to toPosition.
+	 */
+	public void notifyItemMoved(int fromPosition, int toPosition) {
+		for (int i = itemRangeObservers.size() - 1; i >= 0; i--) {
+			itemRangeObservers.get(i).onItemMoved(fromPosition, toPosition);
+		}
+		notifyDataSetChanged();
+	}
+
+	private void notifyItemRangeReplaced(int positionStart, int oldItemCount,
+			int newItemCount) {
+		for (int i = itemRangeObservers.size() - 1; i >= 0; i--) {
+			itemRangeObservers.get(i).onItemRangeReplaced(positionStart,
+					oldItemCount, newItemCount);
+		}
+		notifyDataSetChanged();
+	}
+
+}
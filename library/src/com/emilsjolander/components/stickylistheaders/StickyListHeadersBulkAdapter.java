@@ -0,0 +1,23 @@
+package com.emilsjolander.components.stickylistheaders;
+
+/**
+ * A {@link StickyListHeadersAdapter} which can look up the header ids of many
+ * items at once, for example with a single query or page fetch. The list uses
+ * this instead of {@link #getHeaderId(int)} whenever it needs the header ids
+ * of more than one item.
+ */
+public interface StickyListHeadersBulkAdapter extends StickyListHeadersAdapter {
+
+	/**
+	 * Get the header ids of count items starting at position.
+	 *
+	 * @param position
+	 * The position of the first item within the adapter's data set.
+	 * @param count
+	 * The number of items, they are all within the data set.
+	 * @param headerIds
+	 * The array to fill, the header id of the item at position + i goes into
+	 * headerIds[i]. It is at least count long.
+	 */
+	void getHeaderIds(int position, int count, long[] headerIds);
+}
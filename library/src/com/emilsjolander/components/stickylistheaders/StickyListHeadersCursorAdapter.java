@@ -0,0 +1,193 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.database.Cursor;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.CursorAdapter;
+
+/**
+ * A {@link CursorAdapter} for sticky list headers whose sections are read from
+ * a second, grouped query instead of from every row of the data cursor. The
+ * sections cursor must have one row per section, in the same order as the data
+ * cursor, with the section's header id and number of items, e.g.
+ *
+ * <pre>
+ * SELECT first_letter AS header_id, COUNT(*) AS item_count FROM countries
+ * GROUP BY first_letter ORDER BY first_letter
+ * </pre>
+ *
+ * Header ids are then answered from memory, the data cursor is only moved to
+ * bind a view. The cursors are not requeried automatically, new data and
+ * sections are passed together to {@link #changeCursors(Cursor, Cursor)} or,
+ * from a loader's callbacks, {@link #swapCursors(Cursor, Cursor)}. A data
+ * cursor changed on its own, through {@link #changeCursor(Cursor)},
+ * {@link #swapCursor(Cursor)} or the inherited filter, has its sections found
+ * by reading the header id of every row, see {@link #readHeaderId(Cursor)}.
+ */
+public abstract class StickyListHeadersCursorAdapter extends CursorAdapter
+		implements StickyListHeadersSectionedAdapter {
+
+	private final String headerIdColumn;
+	private final String itemCountColumn;
+	private final SectionIndex sectionIndex = new SectionIndex();
+	private boolean keepingSections;
+
+	/**
+	 * @param context
+	 * The context.
+	 * @param c
+	 * The data cursor, one row per item.
+	 * @param sections
+	 * The sections cursor, one row per section. It is read right away and not
+	 * kept, closing it is up to the caller.
+	 * @param headerIdColumn
+	 * The column of the sections cursor holding the header id.
+	 * @param itemCountColumn
+	 * The column of the sections cursor holding the number of items.
+	 */
+	public StickyListHeadersCursorAdapter(Context context, Cursor c,
+			Cursor sections, String headerIdColumn, String itemCountColumn) {
+		super(context, c, false);
+		this.headerIdColumn = headerIdColumn;
+		this.itemCountColumn = itemCountColumn;
+		readSections(sections);
+	}
+
+	/**
+	 * Change both the data and the sections, the old data cursor is closed.
+	 * The sections cursor is read right away and not kept.
+	 */
+	public void changeCursors(Cursor cursor, Cursor sections) {
+		// the sections must be in place before observers hear of the new data
+		readSections(sections);
+		changeCursorKeepingSections(cursor);
+	}
+
+	/**
+	 * Like {@link #changeCursors(Cursor, Cursor)}, but the old data cursor is
+	 * returned instead of closed. Needs Honeycomb, like
+	 * {@link #swapCursor(Cursor)}.
+	 */
+	@SuppressLint("NewApi")
+	public Cursor swapCursors(Cursor cursor, Cursor sections) {
+		readSections(sections);
+		return super.swapCursor(cursor);
+	}
+
+	/**
+	 * Finds the sections by reading every row of cursor, prefer
+	 * {@link #changeCursors(Cursor, Cursor)}.
+	 */
+	@Override
+	public void changeCursor(Cursor cursor) {
+		scanSections(cursor);
+		changeCursorKeepingSections(cursor);
+	}
+
+	/**
+	 * Finds the sections by reading every row of cursor, prefer
+	 * {@link #swapCursors(Cursor, Cursor)}.
+	 */
+	@SuppressLint("NewApi")
+	@Override
+	public Cursor swapCursor(Cursor cursor) {
+		if (!keepingSections) {
+			scanSections(cursor);
+		}
+		return super.swapCursor(cursor);
+	}
+
+	private void changeCursorKeepingSections(Cursor cursor) {
+		// newer versions change the cursor through swapCursor()
+		keepingSections = true;
+		try {
+			super.changeCursor(cursor);
+		} finally {
+			keepingSections = false;
+		}
+	}
+
+	/**
+	 * The header id of the row cursor points to, only used for a data cursor
+	 * which has been changed without its sections. By default it is read from
+	 * the data cursor's column with the name of the sections' header id
+	 * column.
+	 */
+	protected long readHeaderId(Cursor cursor) {
+		return cursor.getLong(cursor.getColumnIndexOrThrow(headerIdColumn));
+	}
+
+	private void scanSections(Cursor cursor) {
+		int count = cursor != null ? cursor.getCount() : 0;
+		sectionIndex.reset(count);
+		for (int i = 0; i < count; i++) {
+			cursor.moveToPosition(i);
+			sectionIndex.appendItem(readHeaderId(cursor));
+		}
+	}
+
+	private void readSections(Cursor sections) {
+		sectionIndex.reset(0);
+		if (sections == null) {
+			return;
+		}
+		int headerIdIndex = sections.getColumnIndexOrThrow(headerIdColumn);
+		int itemCountIndex = sections.getColumnIndexOrThrow(itemCountColumn);
+		for (sections.moveToPosition(-1); sections.moveToNext();) {
+			sectionIndex.appendSection(sections.getInt(itemCountIndex),
+					sections.getLong(headerIdIndex));
+		}
+	}
+
+	@Override
+	public int getSectionCount() {
+		return sectionIndex.getSectionCount();
+	}
+
+	@Override
+	public int getSectionStart(int section) {
+		return sectionIndex.getSectionStart(section);
+	}
+
+	@Override
+	public long getSectionHeaderId(int section) {
+		return sectionIndex.getHeaderIdOfSection(section);
+	}
+
+	@Override
+	public long getHeaderId(int position) {
+		return sectionIndex.getHeaderIdOfSection(sectionIndex
+				.getSectionForItem(position));
+	}
+
+	@Override
+	public View getHeaderView(int position, View convertView, ViewGroup parent) {
+		Cursor cursor = getCursor();
+		if (!cursor.moveToPosition(position)) {
+			throw new IllegalStateException(
+					"couldn't move cursor to position " + position);
+		}
+		Context context = parent.getContext();
+		if (convertView == null) {
+			convertView = newHeaderView(context, cursor, parent);
+		}
+		bindHeaderView(convertView, context, cursor);
+		return convertView;
+	}
+
+	/**
+	 * Makes a new header view to hold the header data pointed to by cursor.
+	 */
+	public abstract View newHeaderView(Context context, Cursor cursor,
+			ViewGroup parent);
+
+	/**
+	 * Bind the header of the item pointed to by cursor to an existing header
+	 * view.
+	 */
+	public abstract void bindHeaderView(View view, Context context,
+			Cursor cursor);
+
+}
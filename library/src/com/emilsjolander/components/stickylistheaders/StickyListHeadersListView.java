@@ -1,17 +1,24 @@
 package com.emilsjolander.components.stickylistheaders;
 
-import java.util.ArrayList;
-
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.database.DataSetObserver;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Looper;
+import android.os.MessageQueue;
 import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
 import android.view.View;
 import android.view.View.OnClickListener;
+import android.view.ViewConfiguration;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.AbsListView.OnScrollListener;
 import android.widget.ListAdapter;
@@ -23,11 +30,52 @@ import android.widget.ListView;
 public class StickyListHeadersListView extends ListView implements
 		OnScrollListener, OnClickListener {
 
+	private static final int MAX_HIDDEN_HEADERS = 4;
+	private static final int DEFAULT_HEADER_CACHE_SIZE = 2;
+	private static final String TRACE_SCROLL_CHANGED = "StickyListHeaders scroll";
+	private static final String TRACE_BIND_HEADER = "StickyListHeaders bind header";
+	static final String TRACE_MEASURE_HEADER = "StickyListHeaders measure header";
+
 	public interface OnHeaderClickListener {
 		public void onHeaderClick(StickyListHeadersListView l, View header,
 				int itemPosition, long headerId, boolean currentlySticky);
 	}
 
+	/**
+	 * Told what the list spends its time on, all durations are in
+	 * nanoseconds. Every phase is also marked as a systrace section where
+	 * android.os.Trace is available. Nothing is timed without a listener.
+	 */
+	public interface MetricsListener {
+		/**
+		 * The sections of rowCount items have been found, either all at once or
+		 * in the background.
+		 */
+		public void onSectionIndexBuilt(int rowCount, long duration);
+
+		/**
+		 * rowCount more items have been looked at to find their sections,
+		 * which is how sections are found a chunk at a time while the list is
+		 * shown, unless they are all needed at once.
+		 */
+		public void onSectionsScanned(int rowCount, long duration);
+
+		public void onStickyHeaderBound(long duration);
+
+		public void onStickyHeaderMeasured(long duration);
+
+		/**
+		 * The sticky header has been updated for a frame.
+		 */
+		public void onScrollChanged(long duration);
+
+		/**
+		 * A view of viewType had to be created as there was none to recycle
+		 * and none warmed up ahead of time.
+		 */
+		public void onRecycleMiss(int viewType);
+	}
+
 	private OnScrollListener scrollListener;
 	private boolean areHeadersSticky = true;
 	private int dividerHeight;
@@ -37,11 +85,89 @@ public class StickyListHeadersListView extends ListView implements
 	private Long currentHeaderId = null;
 	private StickyListHeadersAdapterWrapper adapter;
 	private OnHeaderClickListener onHeaderClickListener;
+	private MetricsListener metricsListener;
 	private int headerPosition;
-	private ArrayList<View> footerViews;
 	private StickyListHeadersListViewWrapper frame;
 	private int adapterCount;
 	private boolean drawingListUnderStickyHeader = true;
+	private boolean buildingSectionsAsync;
+	private boolean drawingDividersOnCanvas;
+	private boolean drawingHeadersAsDecorations;
+	private final Rect dividerBounds = new Rect();
+	private int lastFirstVisibleItem = -1;
+	private int lastFirstChildTop = Integer.MIN_VALUE;
+	private final View[] hiddenHeaders = new View[MAX_HIDDEN_HEADERS];
+	private int hiddenHeaderCount;
+	private WrapperView headerLender;
+	private final HeaderViewCache headerCache = new HeaderViewCache(
+			DEFAULT_HEADER_CACHE_SIZE);
+	private int scrollState = SCROLL_STATE_IDLE;
+	private boolean headerPrefetchScheduled;
+	private boolean scrollChangePending;
+	private boolean warmingUpViews;
+
+	/**
+	 * Creates one of the views asked for by warmUpViews() each time the ui
+	 * thread is idle, so no frame has to wait for more than one.
+	 */
+	private final MessageQueue.IdleHandler viewWarmer = new MessageQueue.IdleHandler() {
+
+		@Override
+		public boolean queueIdle() {
+			warmingUpViews = adapter != null && adapter.warmUpNextView(
+					StickyListHeadersListView.this);
+			return warmingUpViews;
+		}
+	};
+	private boolean preDrawListenerRegistered;
+	private boolean drawingStickyHeaderInList;
+	private View stickyHeader;
+	private int stickyHeaderHeight = -1;
+	private int stickyHeaderMeasuredWidth;
+	private int stickyHeaderBottomPosition = -1;
+	private boolean stickyHeaderTouched;
+	private float stickyHeaderDownY;
+	private final Rect stickyHeaderBounds = new Rect();
+	private boolean cachingStickyHeaderWhileFlinging;
+	private View cachedStickyHeader;
+	private int coveredTop;
+	private int coveredBottom;
+	private int skippedChildDrawCount;
+
+	/**
+	 * Runs the scroll pass once per frame, right before it is drawn, however
+	 * many scroll events there have been since the last one.
+	 */
+	private final ViewTreeObserver.OnPreDrawListener scrollChangeUpdater = new ViewTreeObserver.OnPreDrawListener() {
+
+		@Override
+		public boolean onPreDraw() {
+			// onScroll isn't reliable before froyo, there the pass runs every
+			// frame and relies on its own short-circuit instead
+			if (scrollChangePending
+					|| Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {
+				scrollChangePending = false;
+				if (metricsListener == null) {
+					scrollChanged(getFirstVisiblePosition());
+				} else {
+					long start = Tracing.begin(TRACE_SCROLL_CHANGED);
+					scrollChanged(getFirstVisiblePosition());
+					metricsListener.onScrollChanged(Tracing.end(start));
+				}
+			}
+			return true;
+		}
+	};
+
+	private final MessageQueue.IdleHandler headerPrefetcher = new MessageQueue.IdleHandler() {
+
+		@Override
+		public boolean queueIdle() {
+			headerPrefetchScheduled = false;
+			prefetchHeaders();
+			return false;
+		}
+	};
 
 	private DataSetObserver dataSetChangedObserver = new DataSetObserver() {
 
@@ -91,7 +217,7 @@ public class StickyListHeadersListView extends ListView implements
 	@Override
 	protected void onAttachedToWindow() {
 		super.onAttachedToWindow();
-		if (frame == null) {
+		if (frame == null && !drawingStickyHeaderInList) {
 			ViewGroup parent = ((ViewGroup) getParent());
 			int listIndex = parent.indexOfChild(this);
 			parent.removeView(this);
@@ -99,6 +225,7 @@ public class StickyListHeadersListView extends ListView implements
 			frame = new StickyListHeadersListViewWrapper(getContext());
 			frame.setSelector(getSelector());
 			frame.setDrawSelectorOnTop(drawSelectorOnTop);
+			frame.setMetricsListener(metricsListener);
 			
 			ViewGroup.MarginLayoutParams p = (MarginLayoutParams) getLayoutParams();
 			if (clippingToPadding) {
@@ -117,6 +244,11 @@ public class StickyListHeadersListView extends ListView implements
 			frame.setLayoutParams(p);
 			parent.addView(frame, listIndex);
 		}
+		// moving the list into the frame above attaches it once more
+		if (!preDrawListenerRegistered) {
+			getViewTreeObserver().addOnPreDrawListener(scrollChangeUpdater);
+			preDrawListenerRegistered = true;
+		}
 	}
 
 	@Override
@@ -124,6 +256,8 @@ public class StickyListHeadersListView extends ListView implements
 	public void setBackgroundDrawable(Drawable background) {
 		if (frame != null) {
 			frame.setBackgroundDrawable(background);
+		} else if (drawingStickyHeaderInList) {
+			super.setBackgroundDrawable(background);
 		}
 	}
 
@@ -131,15 +265,61 @@ public class StickyListHeadersListView extends ListView implements
 	public void setDrawSelectorOnTop(boolean onTop) {
 		super.setDrawSelectorOnTop(onTop);
 		drawSelectorOnTop = onTop;
-		frame.setDrawSelectorOnTop(drawSelectorOnTop);
+		if (frame != null) {
+			frame.setDrawSelectorOnTop(drawSelectorOnTop);
+		}
 	}
 
 	private void reset() {
-		if (frame != null) {
-			frame.setHeaderBottomPosition(-1);
-			frame.removeHeader();
+		setStickyHeaderBottomPosition(-1);
+		View header = takeHeaderFromFrame();
+		currentHeaderId = null;
+		lastFirstChildTop = Integer.MIN_VALUE;
+		if (adapter == null) {
+			return;
+		}
+		// the headers are bound to the old data, they are rebound rather than
+		// inflated again
+		if (header != null) {
+			addSpareHeader(header);
+		}
+		while ((header = headerCache.removeEldest()) != null) {
+			addSpareHeader(header);
+		}
+	}
+
+	/**
+	 * Takes the sticky header away, keeping it bound in case its section comes
+	 * back.
+	 */
+	private void removeHeader() {
+		setStickyHeaderBottomPosition(-1);
+		View header = takeHeaderFromFrame();
+		if (header != null && currentHeaderId != null) {
+			header = headerCache.put(currentHeaderId, header);
+		}
+		if (header != null) {
+			addSpareHeader(header);
 		}
 		currentHeaderId = null;
+		lastFirstChildTop = Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Hand a sticky header to the adapter, to be rebound in a header row.
+	 */
+	private void addSpareHeader(View header) {
+		clearStickyHeaderClick(header);
+		adapter.addSpareHeader(header);
+	}
+
+	/**
+	 * Clicks on the sticky header go to the list, a header in a row must not
+	 * take them or its row couldn't be clicked.
+	 */
+	private static void clearStickyHeaderClick(View header) {
+		header.setOnClickListener(null);
+		header.setClickable(false);
 	}
 
 	@Override
@@ -149,6 +329,10 @@ public class StickyListHeadersListView extends ListView implements
 		final int viewType = adapter.getItemViewType(position-headerViewsCount);
 		if (viewType == adapter.headerViewType) {
 			if (onHeaderClickListener != null) {
+				if (view instanceof WrapperView
+						&& ((WrapperView) view).hasHeader()) {
+					view = ((WrapperView) view).getHeader();
+				}
 				position = adapter.getRealPositionDisregardingHeadersAndDividers(position-headerViewsCount);
 				onHeaderClickListener.onHeaderClick(this, view, position, id, false);
 				return true;
@@ -163,6 +347,9 @@ public class StickyListHeadersListView extends ListView implements
 				}else if(!(position<headerViewsCount)){
 					position = adapter.getRealPositionDisregardingHeadersAndDividers(position-headerViewsCount) + headerViewsCount;
 				}
+				if (view instanceof WrapperView) {
+					view = ((WrapperView) view).getItem();
+				}
 				listener.onItemClick(this, view, position, id);
 				return true;
 			}
@@ -218,6 +405,8 @@ public class StickyListHeadersListView extends ListView implements
 		if (this.areHeadersSticky != areHeadersSticky) {
 			if (areHeadersSticky) {
 				super.setVerticalFadingEdgeEnabled(false);
+			} else {
+				showHiddenHeaders();
 			}
 			requestLayout();
 			this.areHeadersSticky = areHeadersSticky;
@@ -238,6 +427,8 @@ public class StickyListHeadersListView extends ListView implements
 					"Adapter must implement StickyListHeadersAdapter");
 		}
 
+		// the old adapter takes back the headers it made
+		reset();
 		if(this.adapter != null){
 			this.adapter.unregisterDataSetObserver(dataSetChangedObserver);
 			this.adapter = null;
@@ -248,11 +439,15 @@ public class StickyListHeadersListView extends ListView implements
 					(StickyListHeadersAdapter) adapter);
 			this.adapter.setDivider(divider);
 			this.adapter.setDividerHeight(dividerHeight);
+			this.adapter.setBuildingSectionsAsync(buildingSectionsAsync);
+			this.adapter.setDividerRows(!drawingDividersOnCanvas);
+			this.adapter.setHeaderRows(!drawingHeadersAsDecorations);
+			this.adapter.setHeaderClickListener(this);
+			this.adapter.setMetricsListener(metricsListener);
 			this.adapter.registerDataSetObserver(dataSetChangedObserver);
 			adapterCount = this.adapter.getCount();
 		}
 		
-		reset();
 		super.setAdapter(this.adapter);
 	}
 
@@ -265,19 +460,218 @@ public class StickyListHeadersListView extends ListView implements
 
 	@Override
 	protected void dispatchDraw(Canvas canvas) {
-		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.FROYO) {
-			post(new Runnable() {
-				
-				@Override
-				public void run() {
-					scrollChanged(getFirstVisiblePosition());
-				}
-			});
-		}
 		if(!drawingListUnderStickyHeader){
-			canvas.clipRect(0, Math.max(frame.getHeaderBottomPosition(), 0), canvas.getWidth(), canvas.getHeight());
+			canvas.save();
+			canvas.clipRect(0, Math.max(getStickyHeaderBottomPosition(), 0), canvas.getWidth(), canvas.getHeight());
 		}
+		updateCoveredArea();
 		super.dispatchDraw(canvas);
+		if ((drawingDividersOnCanvas || drawingHeadersAsDecorations)
+				&& adapter != null && divider != null
+				&& dividerHeight > 0) {
+			drawDividers(canvas);
+		}
+		if (!drawingListUnderStickyHeader) {
+			canvas.restore();
+		}
+		if (stickyHeader != null && stickyHeaderBottomPosition > 0) {
+			drawStickyHeader(canvas);
+		}
+	}
+
+	/**
+	 * Finds the band of the list hidden by the sticky header, which is empty
+	 * unless the header is opaque.
+	 */
+	private void updateCoveredArea() {
+		coveredTop = 0;
+		coveredBottom = 0;
+		if (!areHeadersSticky) {
+			return;
+		}
+		View header = getStickyHeader();
+		int headerBottom = getStickyHeaderBottomPosition();
+		if (header == null || headerBottom <= 0 || !header.isOpaque()) {
+			return;
+		}
+		coveredTop = headerBottom - header.getHeight();
+		coveredBottom = headerBottom;
+	}
+
+	/**
+	 * Children entirely hidden by an opaque sticky header aren't drawn at all
+	 * and those partly hidden are clipped to what is left of them. Only
+	 * children within the header's width are considered.
+	 */
+	@Override
+	protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+		if (coveredBottom <= coveredTop || child.getTop() >= coveredBottom
+				|| child.getTop() < coveredTop
+				|| child.getLeft() < getPaddingLeft()
+				|| child.getRight() > getWidth() - getPaddingRight()) {
+			return super.drawChild(canvas, child, drawingTime);
+		}
+		if (child.getBottom() <= coveredBottom) {
+			skippedChildDrawCount++;
+			return false;
+		}
+		canvas.save();
+		canvas.clipRect(child.getLeft(), coveredBottom, child.getRight(),
+				child.getBottom());
+		boolean more = super.drawChild(canvas, child, drawingTime);
+		canvas.restore();
+		return more;
+	}
+
+	/**
+	 * @return how many times a child hasn't been drawn because it was hidden
+	 *         by the sticky header
+	 */
+	public int getSkippedChildDrawCount() {
+		return skippedChildDrawCount;
+	}
+
+	public void resetSkippedChildDrawCount() {
+		skippedChildDrawCount = 0;
+	}
+
+	/**
+	 * Draws the sticky header when there is no frame to hold it, with the
+	 * selector behind or on top of it while it is pressed.
+	 */
+	private void drawStickyHeader(Canvas canvas) {
+		int left = getPaddingLeft();
+		stickyHeaderBounds.set(left, stickyHeaderBottomPosition
+				- stickyHeader.getHeight(), left + stickyHeader.getWidth(),
+				stickyHeaderBottomPosition);
+		boolean pressed = stickyHeader.isPressed();
+		if (pressed && !drawSelectorOnTop) {
+			drawStickyHeaderSelector(canvas);
+		}
+		Bitmap cache = stickyHeader == cachedStickyHeader ? stickyHeader
+				.getDrawingCache() : null;
+		if (cache != null) {
+			canvas.drawBitmap(cache, stickyHeaderBounds.left,
+					stickyHeaderBounds.top, null);
+		} else {
+			canvas.save();
+			canvas.translate(stickyHeaderBounds.left, stickyHeaderBounds.top);
+			stickyHeader.draw(canvas);
+			canvas.restore();
+		}
+		if (pressed && drawSelectorOnTop) {
+			drawStickyHeaderSelector(canvas);
+		}
+	}
+
+	private void drawStickyHeaderSelector(Canvas canvas) {
+		Drawable selector = getSelector();
+		if (selector == null) {
+			return;
+		}
+		int[] selectorState = selector.getState();
+		selector.setBounds(stickyHeaderBounds);
+		selector.setState(stickyHeader.getDrawableState());
+		selector.draw(canvas);
+		selector.setState(selectorState);
+	}
+
+	/**
+	 * The sticky header isn't a child when there is no frame, touches on it
+	 * are handled here and never reach the list, just like they wouldn't
+	 * reach it past a header in the frame.
+	 */
+	@Override
+	public boolean dispatchTouchEvent(MotionEvent ev) {
+		if (stickyHeader == null && !stickyHeaderTouched) {
+			return super.dispatchTouchEvent(ev);
+		}
+		switch (ev.getAction() & MotionEvent.ACTION_MASK) {
+		case MotionEvent.ACTION_DOWN:
+			if (!isOverStickyHeader(ev.getX(), ev.getY())) {
+				return super.dispatchTouchEvent(ev);
+			}
+			stickyHeaderTouched = true;
+			stickyHeaderDownY = ev.getY();
+			stickyHeader.setPressed(true);
+			invalidate();
+			return true;
+		case MotionEvent.ACTION_MOVE:
+			if (!stickyHeaderTouched) {
+				return super.dispatchTouchEvent(ev);
+			}
+			if (stickyHeader != null
+					&& stickyHeader.isPressed()
+					&& Math.abs(ev.getY() - stickyHeaderDownY) > ViewConfiguration
+							.get(getContext()).getScaledTouchSlop()) {
+				stickyHeader.setPressed(false);
+				invalidate();
+			}
+			return true;
+		case MotionEvent.ACTION_UP:
+			if (!stickyHeaderTouched) {
+				return super.dispatchTouchEvent(ev);
+			}
+			stickyHeaderTouched = false;
+			if (stickyHeader != null && stickyHeader.isPressed()) {
+				stickyHeader.setPressed(false);
+				invalidate();
+				playSoundEffect(SoundEffectConstants.CLICK);
+				onClick(stickyHeader);
+			}
+			return true;
+		case MotionEvent.ACTION_CANCEL:
+			if (!stickyHeaderTouched) {
+				return super.dispatchTouchEvent(ev);
+			}
+			stickyHeaderTouched = false;
+			if (stickyHeader != null) {
+				stickyHeader.setPressed(false);
+				invalidate();
+			}
+			return true;
+		default:
+			return stickyHeaderTouched || super.dispatchTouchEvent(ev);
+		}
+	}
+
+	private boolean isOverStickyHeader(float x, float y) {
+		if (stickyHeader == null || stickyHeaderBottomPosition <= 0) {
+			return false;
+		}
+		int left = getPaddingLeft();
+		return y < stickyHeaderBottomPosition
+				&& y >= stickyHeaderBottomPosition - stickyHeader.getHeight()
+				&& x >= left && x < left + stickyHeader.getWidth();
+	}
+
+	/**
+	 * Draws a divider over the bottom edge of every item which is followed by
+	 * another item of the same section. No space is reserved for them, which
+	 * is what lets the adapter do without divider rows.
+	 */
+	private void drawDividers(Canvas canvas) {
+		int childCount = getChildCount();
+		int firstPosition = getFirstVisiblePosition() - getHeaderViewsCount();
+		dividerBounds.left = getPaddingLeft();
+		dividerBounds.right = getWidth() - getPaddingRight();
+		for (int i = 0; i < childCount - 1; i++) {
+			int position = firstPosition + i;
+			if (position < 0 || position + 1 >= adapterCount) {
+				continue;
+			}
+			// a header row is never followed by a divider, a decorated row
+			// has its header above the item so it can be
+			if (adapter.isHeader(position + 1)
+					|| (adapter.hasHeaderRows() && adapter.isHeader(position))) {
+				continue;
+			}
+			int bottom = getChildAt(i).getBottom();
+			dividerBounds.top = bottom - dividerHeight;
+			dividerBounds.bottom = bottom;
+			divider.setBounds(dividerBounds);
+			divider.draw(canvas);
+		}
 	}
 
 	@Override
@@ -294,9 +688,7 @@ public class StickyListHeadersListView extends ListView implements
 			scrollListener.onScroll(view, firstVisibleItem, visibleItemCount,
 					totalItemCount);
 		}
-		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.FROYO) {
-			scrollChanged(firstVisibleItem);
-		}
+		scrollChangePending = true;
 	}
 
 	private void scrollChanged(int firstVisibleItem) {
@@ -314,138 +706,404 @@ public class StickyListHeadersListView extends ListView implements
 
 		if (firstVisibleItem < 0 || firstVisibleItem > adapterCount - 1) {
 			if(currentHeaderId != null){
-				reset();
-				updateHeaderVisibilities();
+				removeHeader();
+				showHiddenHeaders();
 				invalidate();
 			}
 			return;
 		}
 
+		int top = clippingToPadding ? getPaddingTop() : 0;
+		if (headerLender != null && headerLender.getParent() == this
+				&& headerLender.getTop() >= top
+				&& headerLender.isLendingHeader(getStickyHeader())) {
+			// the row has scrolled back into view and has to show its header
+			// itself, the sticky header is bound anew should it be needed
+			removeHeader();
+		}
+
 		boolean headerHasChanged = false;
 		long newHeaderId = adapter.getHeaderId(firstVisibleItem);
 		if (currentHeaderId == null || currentHeaderId != newHeaderId) {
 			headerPosition = firstVisibleItem;
-			View header = adapter.getHeaderView(headerPosition,
-					frame.removeHeader(), frame);
+			View header = headerCache.get(newHeaderId);
+			View convertView = takeHeaderFromFrame();
+			if (convertView != null && currentHeaderId != null) {
+				convertView = headerCache.put(currentHeaderId, convertView);
+			}
+			if (header == null) {
+				header = borrowHeader(firstVisibleItem, listViewHeaderCount);
+			}
+			if (header == null) {
+				if (convertView == null) {
+					convertView = adapter.takeSpareHeader();
+				}
+				header = bindStickyHeader(headerPosition, convertView);
+				convertView = null;
+			}
+			if (convertView != null) {
+				addSpareHeader(convertView);
+			}
 			header.setOnClickListener(this);
-			frame.setHeader(header);
+			setStickyHeader(header);
 			headerHasChanged = true;
+			currentHeaderId = newHeaderId;
+			scheduleHeaderPrefetch();
 		}
-		currentHeaderId = newHeaderId;
-		
+
 		int childCount = getChildCount();
+		if (childCount == 0) {
+			return;
+		}
+
+		int firstChildTop = getChildAt(0).getTop();
+		if (!headerHasChanged && firstVisibleItem == lastFirstVisibleItem
+				&& firstChildTop == lastFirstChildTop) {
+			// nothing has moved since the last time
+			return;
+		}
+		lastFirstVisibleItem = firstVisibleItem;
+		lastFirstChildTop = firstChildTop;
 
-		if (childCount > 0) {
-			View viewToWatch = null;
-			int watchingChildDistance = Integer.MAX_VALUE;
-			boolean viewToWatchIsFooter = false;
+		showHeadersNoLongerUnderTop(top);
 
-			for (int i = 0; i < childCount; i++) {
-				View child = getChildAt(i);
-				boolean childIsFooter = footerViews != null
-						&& footerViews.contains(child);
+		// only a header or footer within one header height of the top can push
+		// the sticky header up, and only headers above the top need hiding, so
+		// the children below that don't need to be looked at
+		int headerHeight = getStickyHeaderHeight();
+		int firstPosition = getFirstVisiblePosition();
+		int footerPosition = listViewHeaderCount + adapterCount;
+		// at the top of a list which doesn't clip to its padding the first
+		// header row may be further down than that, it hides the sticky
+		// header all the same
+		boolean unclippedListTop = firstVisibleItem == listViewHeaderCount
+				&& firstChildTop > 0 && !clippingToPadding;
+		View viewToWatch = null;
+		for (int i = 0; i < childCount; i++) {
+			View child = getChildAt(i);
+			int childTop = child.getTop();
+			if (childTop - top >= headerHeight && !unclippedListTop) {
+				break;
+			}
+			int position = firstPosition + i;
+			boolean childIsFooter = position >= footerPosition;
+			boolean childIsHeader = !childIsFooter
+					&& position >= listViewHeaderCount
+					&& adapter.isHeader(position - listViewHeaderCount);
+			if (childTop < top) {
+				if (childIsHeader) {
+					hideHeader(child);
+				}
+			} else if (childIsHeader || childIsFooter) {
+				viewToWatch = child;
+				break;
+			}
+		}
 
-				int childDistance;
+		int headerBottomPosition = 0;
+		if (viewToWatch != null) {
+			if (unclippedListTop) {
+				headerBottomPosition = 0;
+			} else {
 				if (clippingToPadding) {
-					childDistance = child.getTop() - getPaddingTop();
+					headerBottomPosition = Math.min(viewToWatch.getTop(),
+							headerHeight + getPaddingTop());
+					headerBottomPosition = headerBottomPosition < getPaddingTop() ? headerHeight
+							+ getPaddingTop()
+							: headerBottomPosition;
 				} else {
-					childDistance = child.getTop();
+					headerBottomPosition = Math.min(viewToWatch.getTop(),
+							headerHeight);
+					headerBottomPosition = headerBottomPosition < 0 ? headerHeight
+							: headerBottomPosition;
 				}
+			}
+		} else {
+			headerBottomPosition = headerHeight;
+			if (clippingToPadding) {
+				headerBottomPosition += getPaddingTop();
+			}
+		}
+		if(getStickyHeaderBottomPosition() != headerBottomPosition || headerHasChanged){
+			setStickyHeaderBottomPosition(headerBottomPosition);
+		}
+	}
 
-				if (childDistance < 0) {
-					continue;
-				}
+	/**
+	 * Takes the already bound header out of the header row of the section of
+	 * the item at position, if that row is under the top of the list. The row
+	 * keeps its space and gets the header back once the sticky header moves
+	 * on, unless it has been rebound by then.
+	 */
+	private View borrowHeader(int position, int listViewHeaderCount) {
+		int rowPosition = adapter.getSectionHeaderPosition(position, 0);
+		int index = rowPosition + listViewHeaderCount
+				- getFirstVisiblePosition();
+		if (index < 0 || index >= getChildCount()) {
+			return null;
+		}
+		View row = getChildAt(index);
+		int top = clippingToPadding ? getPaddingTop() : 0;
+		if (!(row instanceof WrapperView) || row.getTop() >= top
+				|| !((WrapperView) row).hasHeader()) {
+			return null;
+		}
+		headerLender = (WrapperView) row;
+		View header = headerLender.lendHeader();
+		// it may have been hidden under the sticky header already
+		if (header.getVisibility() != View.VISIBLE) {
+			header.setVisibility(View.VISIBLE);
+		}
+		return header;
+	}
 
-				if (viewToWatch == null
-						|| (!viewToWatchIsFooter && !adapter
-								.isHeader(viewToWatch))
-						|| ((childIsFooter || adapter.isHeader(child)) && childDistance < watchingChildDistance)) {
-					viewToWatch = child;
-					viewToWatchIsFooter = childIsFooter;
-					watchingChildDistance = childDistance;
+	/**
+	 * @return the sticky header, or null if it was borrowed and has been
+	 *         handed back to its row
+	 */
+	private View takeHeaderFromFrame() {
+		View header = removeStickyHeader();
+		if (headerLender != null) {
+			if (headerLender.isLendingHeader(header)) {
+				// a decorated row's header is clicked through the list as well
+				if (adapter == null || adapter.hasHeaderRows()) {
+					clearStickyHeaderClick(header);
 				}
+				headerLender.returnHeader();
+				header = null;
 			}
+			headerLender = null;
+		}
+		return header;
+	}
 
-			int headerHeight = frame.getHeaderHeight();
-			int headerBottomPosition = 0;
-			if (viewToWatch != null
-					&& (viewToWatchIsFooter || adapter.isHeader(viewToWatch))) {
+	// The sticky header lives in the frame, or in the fields above when the
+	// list draws it itself. Everything else goes through these.
 
-				if (firstVisibleItem == listViewHeaderCount
-						&& getChildAt(0).getTop() > 0 && !clippingToPadding) {
-					headerBottomPosition = 0;
-				} else {
-					if (clippingToPadding) {
-						headerBottomPosition = Math.min(viewToWatch.getTop(),
-								headerHeight + getPaddingTop());
-						headerBottomPosition = headerBottomPosition < getPaddingTop() ? headerHeight
-								+ getPaddingTop()
-								: headerBottomPosition;
-					} else {
-						headerBottomPosition = Math.min(viewToWatch.getTop(),
-								headerHeight);
-						headerBottomPosition = headerBottomPosition < 0 ? headerHeight
-								: headerBottomPosition;
-					}
-				}
-			} else {
-				headerBottomPosition = headerHeight;
-				if (clippingToPadding) {
-					headerBottomPosition += getPaddingTop();
-				}
-			}
-			if(frame.getHeaderBottomPosition() != headerBottomPosition || headerHasChanged){
-				frame.setHeaderBottomPosition(headerBottomPosition);
-			}
-			updateHeaderVisibilities();
+	private ViewGroup getStickyHeaderParent() {
+		return frame != null ? frame : this;
+	}
+
+	private View getStickyHeader() {
+		return frame != null ? frame.getHeader() : stickyHeader;
+	}
+
+	private void setStickyHeader(View header) {
+		updateStickyHeaderCache(header);
+		if (frame != null) {
+			frame.setHeader(header);
+			return;
 		}
+		stickyHeader = header;
+		stickyHeaderHeight = -1;
+		// a header which is still measured from before needn't be measured
+		// again
+		if (!header.isLayoutRequested()) {
+			stickyHeaderHeight = header.getMeasuredHeight();
+			stickyHeaderMeasuredWidth = header.getMeasuredWidth();
+		}
+		invalidate();
 	}
-	
-	@Override
-	public void setSelector(Drawable sel) {
-		super.setSelector(sel);
-		if(frame != null){
-			frame.setSelector(sel);
+
+	private View removeStickyHeader() {
+		updateStickyHeaderCache(null);
+		if (frame != null) {
+			return frame.removeHeader();
+		}
+		View header = stickyHeader;
+		if (header != null) {
+			header.setPressed(false);
+			invalidate();
 		}
+		stickyHeader = null;
+		stickyHeaderHeight = -1;
+		return header;
 	}
 
-	@Override
-	public void addFooterView(View v) {
-		super.addFooterView(v);
-		if (footerViews == null) {
-			footerViews = new ArrayList<View>();
+	/**
+	 * Caches header if it is the sticky header during a fling, and stops
+	 * caching the one cached before if that is another view or the fling is
+	 * over.
+	 */
+	private void updateStickyHeaderCache(View header) {
+		boolean caching = header != null && cachingStickyHeaderWhileFlinging
+				&& scrollState == SCROLL_STATE_FLING;
+		if (cachedStickyHeader != null
+				&& (!caching || cachedStickyHeader != header)) {
+			setStickyHeaderCached(cachedStickyHeader, false);
+			cachedStickyHeader = null;
+		}
+		if (caching && cachedStickyHeader == null) {
+			setStickyHeaderCached(header, true);
+			cachedStickyHeader = header;
 		}
-		footerViews.add(v);
 	}
 
-	@Override
-	public boolean removeFooterView(View v) {
-		boolean removed = super.removeFooterView(v);
-		if (removed) {
-			footerViews.remove(v);
+	/**
+	 * A header in the frame gets a hardware layer, which is composited as it
+	 * is translated. A header the list draws itself is drawn from its drawing
+	 * cache instead. Both are refreshed when the header is invalidated.
+	 */
+	@SuppressLint("NewApi")
+	private void setStickyHeaderCached(View header, boolean cached) {
+		if (frame == null) {
+			header.setDrawingCacheEnabled(cached);
+		} else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			header.setLayerType(cached ? View.LAYER_TYPE_HARDWARE
+					: View.LAYER_TYPE_NONE, null);
 		}
-		return removed;
 	}
 
-	private void updateHeaderVisibilities() {
-		int top = clippingToPadding ? getPaddingTop() : 0;
-		int childCount = getChildCount();
-		for (int i = 0; i < childCount; i++) {
-			View child = getChildAt(i);
-			if (adapter.isHeader(child)) {
-				if (child.getTop() < top) {
-					if(child.getVisibility() != View.INVISIBLE){
-						child.setVisibility(View.INVISIBLE);
-					}
-				} else {
-					if(child.getVisibility() != View.VISIBLE){
-						child.setVisibility(View.VISIBLE);
-					}
-				}
+	private boolean hasStickyHeader() {
+		return frame != null ? frame.hasHeader() : stickyHeader != null;
+	}
+
+	private boolean isStickyHeader(View v) {
+		return frame != null ? frame.isHeader(v) : v == stickyHeader;
+	}
+
+	private int getStickyHeaderHeight() {
+		if (frame != null) {
+			return frame.getHeaderHeight();
+		}
+		if (stickyHeader == null) {
+			return 0;
+		}
+		int width = getWidth() - getPaddingLeft() - getPaddingRight();
+		if (stickyHeaderHeight < 0 || width != stickyHeaderMeasuredWidth
+				|| stickyHeader.isLayoutRequested()) {
+			measureStickyHeader(stickyHeader, width);
+			stickyHeaderHeight = stickyHeader.getMeasuredHeight();
+			stickyHeaderMeasuredWidth = width;
+		}
+		return stickyHeaderHeight;
+	}
+
+	private void premeasureStickyHeader(View header) {
+		if (frame != null) {
+			frame.premeasureHeader(header);
+		} else if (getWidth() > 0) {
+			measureStickyHeader(header, getWidth() - getPaddingLeft()
+					- getPaddingRight());
+		}
+	}
+
+	/**
+	 * Measures and lays out a header which isn't a child of any view, it gets
+	 * the height it asks for like rows do.
+	 */
+	private void measureStickyHeader(View header, int width) {
+		long start = metricsListener != null ? Tracing
+				.begin(TRACE_MEASURE_HEADER) : 0;
+		ViewGroup.LayoutParams params = header.getLayoutParams();
+		int heightMeasureSpec = params != null && params.height > 0 ? MeasureSpec
+				.makeMeasureSpec(params.height, MeasureSpec.EXACTLY)
+				: MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+		header.measure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
+				heightMeasureSpec);
+		header.layout(0, 0, header.getMeasuredWidth(),
+				header.getMeasuredHeight());
+		if (metricsListener != null) {
+			metricsListener.onStickyHeaderMeasured(Tracing.end(start));
+		}
+	}
+
+	private View bindStickyHeader(int position, View convertView) {
+		if (metricsListener == null) {
+			return adapter.getHeaderView(position, convertView,
+					getStickyHeaderParent());
+		}
+		long start = Tracing.begin(TRACE_BIND_HEADER);
+		View header = adapter.getHeaderView(position, convertView,
+				getStickyHeaderParent());
+		metricsListener.onStickyHeaderBound(Tracing.end(start));
+		return header;
+	}
+
+	private int getStickyHeaderBottomPosition() {
+		return frame != null ? frame.getHeaderBottomPosition()
+				: stickyHeaderBottomPosition;
+	}
+
+	private void setStickyHeaderBottomPosition(int headerBottomPosition) {
+		if (frame != null) {
+			frame.setHeaderBottomPosition(headerBottomPosition);
+			return;
+		}
+		if (stickyHeaderBottomPosition != headerBottomPosition) {
+			stickyHeaderBottomPosition = headerBottomPosition;
+			invalidate();
+		}
+	}
+
+	/**
+	 * Hides the header of a row which has scrolled under the sticky one. Only
+	 * a few are remembered so they can be shown again without looking at
+	 * every child, if there is no room left the header is simply left
+	 * visible.
+	 */
+	private void hideHeader(View row) {
+		View header = getHeaderOfRow(row);
+		if (header != null && header.getVisibility() == View.VISIBLE
+				&& hiddenHeaderCount < hiddenHeaders.length) {
+			header.setVisibility(View.INVISIBLE);
+			hiddenHeaders[hiddenHeaderCount++] = row;
+		}
+	}
+
+	private void showHeadersNoLongerUnderTop(int top) {
+		for (int i = hiddenHeaderCount - 1; i >= 0; i--) {
+			View row = hiddenHeaders[i];
+			// a row which isn't our child anymore has its header shown when it
+			// is rebound, the adapter takes care of that
+			if (row.getParent() != this || row.getTop() >= top) {
+				showHeaderOfRow(row);
+				hiddenHeaders[i] = hiddenHeaders[--hiddenHeaderCount];
+				hiddenHeaders[hiddenHeaderCount] = null;
 			}
 		}
 	}
 
+	private void showHiddenHeaders() {
+		for (int i = 0; i < hiddenHeaderCount; i++) {
+			showHeaderOfRow(hiddenHeaders[i]);
+			hiddenHeaders[i] = null;
+		}
+		hiddenHeaderCount = 0;
+	}
+
+	private void showHeaderOfRow(View row) {
+		View header = getHeaderOfRow(row);
+		if (header != null) {
+			header.setVisibility(View.VISIBLE);
+		}
+	}
+
+	/**
+	 * @return the header shown by a header row or a decorated row
+	 */
+	private static View getHeaderOfRow(View row) {
+		if (row instanceof WrapperView) {
+			return ((WrapperView) row).getHeader();
+		}
+		return row;
+	}
+
+	@Override
+	protected void layoutChildren() {
+		super.layoutChildren();
+		// children may have moved without the list scrolling
+		lastFirstChildTop = Integer.MIN_VALUE;
+	}
+
+	@Override
+	public void setSelector(Drawable sel) {
+		super.setSelector(sel);
+		if(frame != null){
+			frame.setSelector(sel);
+		}
+	}
+
 	private int getFixedFirstVisibleItem(int firstVisibleItem) {
 		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
 			return firstVisibleItem;
@@ -475,18 +1133,103 @@ public class StickyListHeadersListView extends ListView implements
 		if (scrollListener != null) {
 			scrollListener.onScrollStateChanged(view, scrollState);
 		}
+		this.scrollState = scrollState;
+		scheduleHeaderPrefetch();
+		updateStickyHeaderCache(getStickyHeader());
+	}
+
+	/**
+	 * Have the sticky headers of the sections around the current one bound
+	 * and measured the next time the ui thread is idle, unless the list is
+	 * flinging and would be past them before then.
+	 */
+	private void scheduleHeaderPrefetch() {
+		if (headerPrefetchScheduled || scrollState == SCROLL_STATE_FLING
+				|| headerCache.getMaxSize() == 0) {
+			return;
+		}
+		headerPrefetchScheduled = true;
+		Looper.myQueue().addIdleHandler(headerPrefetcher);
+	}
+
+	private void prefetchHeaders() {
+		if (adapter == null || currentHeaderId == null) {
+			return;
+		}
+		prefetchHeader(adapter.getSectionHeaderPosition(headerPosition, 1));
+		// with room for only one the two would keep evicting each other
+		if (headerCache.getMaxSize() > 1) {
+			prefetchHeader(adapter.getSectionHeaderPosition(headerPosition, -1));
+		}
+	}
+
+	/**
+	 * Binds and measures the sticky header of the section whose header is at
+	 * position into the header cache, so that it only has to be swapped in
+	 * when the section reaches the top.
+	 */
+	private void prefetchHeader(int position) {
+		if (position < 0) {
+			return;
+		}
+		long headerId = adapter.getHeaderId(position);
+		if (headerId == currentHeaderId || headerCache.contains(headerId)) {
+			return;
+		}
+		View header = bindStickyHeader(position,
+				headerCache.removeEldestIfFull());
+		header.setOnClickListener(this);
+		premeasureStickyHeader(header);
+		headerCache.put(headerId, header);
+	}
+
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		if (preDrawListenerRegistered) {
+			getViewTreeObserver().removeOnPreDrawListener(scrollChangeUpdater);
+			preDrawListenerRegistered = false;
+		}
+		if (headerPrefetchScheduled) {
+			headerPrefetchScheduled = false;
+			Looper.myQueue().removeIdleHandler(headerPrefetcher);
+		}
+		if (warmingUpViews) {
+			warmingUpViews = false;
+			Looper.myQueue().removeIdleHandler(viewWarmer);
+		}
 	}
 
 	@Override
 	public void setSelectionFromTop(int position, int y) {
 		if (areHeadersSticky) {
-			if (frame != null && frame.hasHeader()) {
-				y += frame.getHeaderHeight();
+			if (hasStickyHeader()) {
+				y += getStickyHeaderHeight();
 			}
 		}
 		super.setSelectionFromTop(position, y);
 	}
 
+	/**
+	 * Scroll to the header of the first section with headerId, so that it
+	 * is right at the top, where it is then the sticky header.
+	 *
+	 * @return false if there is no such section
+	 */
+	public boolean setSelectionToHeaderId(long headerId) {
+		if (adapter == null) {
+			return false;
+		}
+		int position = adapter.getHeaderPosition(headerId);
+		if (position < 0) {
+			return false;
+		}
+		// the sticky header is the header itself, there is nothing to make
+		// room for
+		super.setSelectionFromTop(position + getHeaderViewsCount(), 0);
+		return true;
+	}
+
 	public void setOnHeaderClickListener(
 			OnHeaderClickListener onHeaderClickListener) {
 		this.onHeaderClickListener = onHeaderClickListener;
@@ -494,11 +1237,20 @@ public class StickyListHeadersListView extends ListView implements
 
 	@Override
 	public void onClick(View v) {
-		if (frame.isHeader(v)) {
+		if (isStickyHeader(v)) {
 			if (onHeaderClickListener != null) {
 				onHeaderClickListener.onHeaderClick(this, v, headerPosition,
 						currentHeaderId, true);
 			}
+		} else if (adapter != null && !adapter.hasHeaderRows()
+				&& v.getParent() instanceof WrapperView) {
+			// a decorated row's header, header rows are clicked through
+			// performItemClick()
+			if (onHeaderClickListener != null) {
+				int position = getPositionForView(v) - getHeaderViewsCount();
+				onHeaderClickListener.onHeaderClick(this, v, position,
+						adapter.getHeaderId(position), false);
+			}
 		}
 	}
 
@@ -510,4 +1262,154 @@ public class StickyListHeadersListView extends ListView implements
 		this.drawingListUnderStickyHeader = drawingListUnderStickyHeader;
 	}
 
+	public boolean isDrawingDividersOnCanvas() {
+		return drawingDividersOnCanvas;
+	}
+
+	/**
+	 * Draw the dividers directly instead of inserting a divider row between
+	 * every pair of items, which nearly halves the number of rows the list
+	 * has to lay out. The dividers are then drawn over the bottom edge of the
+	 * item above them instead of getting space of their own.
+	 */
+	public void setDrawingDividersOnCanvas(boolean drawingDividersOnCanvas) {
+		this.drawingDividersOnCanvas = drawingDividersOnCanvas;
+		if (adapter != null) {
+			adapter.setDividerRows(!drawingDividersOnCanvas);
+			invalidate();
+		}
+	}
+
+	/**
+	 * Create header, item and divider views while the ui thread is idle,
+	 * before the list needs them, so that the first layout and the first
+	 * fling don't have to inflate any. Items are created for the first
+	 * positions of the adapter. Call this after setting the adapter, the views
+	 * are kept by it and are dropped along with it. They are created on the
+	 * ui thread, one per idle moment.
+	 */
+	public void warmUpViews(int headerCount, int itemCount, int dividerCount) {
+		if (adapter == null) {
+			return;
+		}
+		adapter.warmUp(headerCount, itemCount, dividerCount);
+		if (!warmingUpViews) {
+			warmingUpViews = true;
+			Looper.myQueue().addIdleHandler(viewWarmer);
+		}
+	}
+
+	public MetricsListener getMetricsListener() {
+		return metricsListener;
+	}
+
+	/**
+	 * Have what the list spends its time on reported to metricsListener, or
+	 * stop reporting with null.
+	 */
+	public void setMetricsListener(MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+		if (frame != null) {
+			frame.setMetricsListener(metricsListener);
+		}
+		if (adapter != null) {
+			adapter.setMetricsListener(metricsListener);
+		}
+	}
+
+	public boolean isDrawingStickyHeaderInList() {
+		return drawingStickyHeaderInList;
+	}
+
+	/**
+	 * Have the list measure, lay out and draw the sticky header itself instead
+	 * of moving into a frame which holds the header on top of it. This saves
+	 * a level in the view hierarchy along with its measure and layout pass.
+	 * The list's background and padding then stay on the list. Must be called
+	 * before the list is attached to a window.
+	 */
+	public void setDrawingStickyHeaderInList(boolean drawingStickyHeaderInList) {
+		if (frame != null) {
+			throw new IllegalStateException(
+					"The list has already been moved into a frame");
+		}
+		this.drawingStickyHeaderInList = drawingStickyHeaderInList;
+	}
+
+	public boolean isCachingStickyHeaderWhileFlinging() {
+		return cachingStickyHeaderWhileFlinging;
+	}
+
+	/**
+	 * Render the sticky header into a hardware layer, or a drawing cache when
+	 * the list draws it itself, while the list is flinging. The header is then
+	 * only redrawn when it changes instead of every frame, while it moves it
+	 * is composited from the cache. Hardware layers need Honeycomb, before
+	 * that only a header drawn by the list is cached.
+	 */
+	public void setCachingStickyHeaderWhileFlinging(
+			boolean cachingStickyHeaderWhileFlinging) {
+		this.cachingStickyHeaderWhileFlinging = cachingStickyHeaderWhileFlinging;
+		updateStickyHeaderCache(getStickyHeader());
+	}
+
+	public int getHeaderCacheSize() {
+		return headerCache.getMaxSize();
+	}
+
+	/**
+	 * Set how many sticky headers of sections which have been scrolled past are
+	 * kept bound, so that scrolling back into one of them swaps the header in
+	 * without binding or measuring it again. Defaults to 2.
+	 */
+	public void setHeaderCacheSize(int headerCacheSize) {
+		if (headerCacheSize < 0) {
+			throw new IllegalArgumentException(
+					"The header cache size can't be negative");
+		}
+		headerCache.setMaxSize(headerCacheSize);
+	}
+
+	public boolean isDrawingHeadersAsDecorations() {
+		return drawingHeadersAsDecorations;
+	}
+
+	/**
+	 * Draw every section's header above the first item of the section, in the
+	 * same row, instead of giving headers rows of their own. Positions in the
+	 * list are then the positions of the adapter, so nothing has to be mapped
+	 * and the list has as many rows as the adapter has items. Dividers are
+	 * drawn on the canvas in this mode.
+	 */
+	public void setDrawingHeadersAsDecorations(
+			boolean drawingHeadersAsDecorations) {
+		if (this.drawingHeadersAsDecorations != drawingHeadersAsDecorations) {
+			this.drawingHeadersAsDecorations = drawingHeadersAsDecorations;
+			if (adapter != null) {
+				// rows of the other kind can't be recycled
+				setAdapter(getWrappedAdapter());
+			}
+		}
+	}
+
+	public boolean isBuildingSectionsAsync() {
+		return buildingSectionsAsync;
+	}
+
+	/**
+	 * Build the sections of a changed data set on a background thread instead
+	 * of discovering them on the ui thread while the list is laid out. Until
+	 * they are ready the list is shown with the sections of the previous data
+	 * set. The adapter has to implement
+	 * {@link StickyListHeadersSnapshotAdapter}, the header ids are read from
+	 * its snapshot and the adapter itself is only used on the ui thread. Other
+	 * adapters are scanned on the ui thread as usual.
+	 */
+	public void setBuildingSectionsAsync(boolean buildingSectionsAsync) {
+		this.buildingSectionsAsync = buildingSectionsAsync;
+		if (adapter != null) {
+			adapter.setBuildingSectionsAsync(buildingSectionsAsync);
+		}
+	}
+
 }
@@ -29,6 +29,9 @@ public class StickyListHeadersListViewWrapper extends FrameLayout {
 	private boolean showSelector;
 	private boolean drawSelectorOnTop = false;
 	private Rect selectorBounds = new Rect();
+	private int headerHeight = -1;
+	private int headerMeasuredWidth;
+	private StickyListHeadersListView.MetricsListener metricsListener;
 
 	private GestureDetector gestureDetector = new GestureDetector(getContext(),
 			new GestureDetector.SimpleOnGestureListener() {
@@ -95,38 +98,90 @@ public class StickyListHeadersListViewWrapper extends FrameLayout {
 					"You must first remove the old header first");
 		}
 		this.header = header;
+		headerHeight = -1;
 		if (header != null) {
-			View list = getChildAt(0);
+			applyHeaderParams(header);
+
+			header.setOnTouchListener(onHeaderTouchListener);
+
+			// addView() would set the params again, which requests a layout
+			// of the header and has it measured once more
+			addViewInLayout(header, -1, header.getLayoutParams(), true);
+			requestLayout();
+			invalidate();
+
+			// a header which is still measured from before needn't be
+			// measured again
+			if (!header.isLayoutRequested()) {
+				headerHeight = header.getMeasuredHeight();
+				headerMeasuredWidth = header.getMeasuredWidth();
+			}
+		}
+	}
+
+	/**
+	 * A header which has been shown or measured before keeps its params,
+	 * setting them again would request a layout.
+	 */
+	private void applyHeaderParams(View header) {
+		View list = getChildAt(0);
+		if (!hasHeaderParams(header, list)) {
 			LayoutParams params = new LayoutParams(LayoutParams.MATCH_PARENT,
 					LayoutParams.WRAP_CONTENT);
 			params.leftMargin = list.getPaddingLeft();
 			params.rightMargin = list.getPaddingRight();
 			params.gravity = Gravity.TOP;
 			header.setLayoutParams(params);
+		}
+	}
 
-			header.setOnTouchListener(onHeaderTouchListener);
-
-			addView(header);
+	private static boolean hasHeaderParams(View header, View list) {
+		if (!(header.getLayoutParams() instanceof LayoutParams)) {
+			return false;
 		}
+		LayoutParams params = (LayoutParams) header.getLayoutParams();
+		return params.width == LayoutParams.MATCH_PARENT
+				&& params.height == LayoutParams.WRAP_CONTENT
+				&& params.leftMargin == list.getPaddingLeft()
+				&& params.rightMargin == list.getPaddingRight()
+				&& params.gravity == Gravity.TOP;
 	}
 
 	@Override
 	protected void onLayout(boolean changed, int left, int top, int right,
 			int bottom) {
 		super.onLayout(changed, left, top, right, bottom);
+		if (changed) {
+			headerHeight = -1;
+		}
 		setHeaderBottomPosition(this.headerBottomPosition);
 	}
 
+	@SuppressLint("NewApi")
 	View removeHeader() {
 		if (this.header != null) {
 			removeView(this.header);
 			this.header.setOnTouchListener(null);
+			// the header may be shown in the list next
+			if (HONEYCOMB_OR__ABOVE) {
+				this.header.setTranslationY(0);
+			}
 		}
 		View header = this.header;
 		this.header = null;
+		headerHeight = -1;
 		return header;
 	}
 
+	View getHeader() {
+		return header;
+	}
+
+	void setMetricsListener(
+			StickyListHeadersListView.MetricsListener metricsListener) {
+		this.metricsListener = metricsListener;
+	}
+
 	boolean hasHeader() {
 		return header != null;
 	}
@@ -135,21 +190,63 @@ public class StickyListHeadersListViewWrapper extends FrameLayout {
 		return header == v;
 	}
 
+	/**
+	 * The header is only measured again if it has been swapped or has
+	 * requested a layout since, or if the width available to it has changed.
+	 */
 	int getHeaderHeight() {
 		if (header == null) {
 			return 0;
 		}
+		int width = getHeaderWidth(header);
+		if (headerHeight < 0 || width != headerMeasuredWidth
+				|| header.isLayoutRequested()) {
+			measureHeader(header, width);
+			headerHeight = header.getMeasuredHeight();
+			headerMeasuredWidth = width;
+		}
+		return headerHeight;
+	}
+
+	/**
+	 * Measure and lay out a header before it is set, so that setting it later
+	 * doesn't have to measure it. Without the layout it would still be
+	 * requesting one and its measurement wouldn't be trusted. Nothing is done
+	 * before the frame itself has been measured.
+	 */
+	void premeasureHeader(View header) {
+		if (getMeasuredWidth() == 0 || getChildCount() == 0) {
+			return;
+		}
+		applyHeaderParams(header);
+		measureHeader(header, getHeaderWidth(header));
+		// where the frame will lay it out
+		int left = getPaddingLeft()
+				+ ((MarginLayoutParams) header.getLayoutParams()).leftMargin;
+		int top = getPaddingTop();
+		header.layout(left, top, left + header.getMeasuredWidth(),
+				top + header.getMeasuredHeight());
+	}
+
+	private int getHeaderWidth(View header) {
 		MarginLayoutParams params = (MarginLayoutParams) header
 				.getLayoutParams();
-		int width = getMeasuredWidth()
+		return getMeasuredWidth()
 				- (params == null ? 0
 						: (params.leftMargin + params.rightMargin));
+	}
+
+	private void measureHeader(View header, int width) {
+		long start = metricsListener != null ? Tracing
+				.begin(StickyListHeadersListView.TRACE_MEASURE_HEADER) : 0;
 		int parentWidthMeasureSpec = MeasureSpec.makeMeasureSpec(width,
 				MeasureSpec.EXACTLY);
 		int parentHeightMeasureSpec = MeasureSpec.makeMeasureSpec(getHeight(),
 				MeasureSpec.EXACTLY);
 		measureChild(header, parentWidthMeasureSpec, parentHeightMeasureSpec);
-		return header.getMeasuredHeight();
+		if (metricsListener != null) {
+			metricsListener.onStickyHeaderMeasured(Tracing.end(start));
+		}
 	}
 
 	@SuppressLint("NewApi")
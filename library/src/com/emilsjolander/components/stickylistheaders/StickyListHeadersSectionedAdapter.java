@@ -0,0 +1,36 @@
+package com.emilsjolander.components.stickylistheaders;
+
+/**
+ * A {@link StickyListHeadersAdapter} which already knows where its sections
+ * start, for example because they are computed by the database. The list then
+ * takes the sections from here instead of calling
+ * {@link #getHeaderId(int)} for every item to find them.
+ * <p>
+ * The sections must cover all items in order, the first one starting at
+ * position 0, and agree with {@link #getHeaderId(int)}.
+ */
+public interface StickyListHeadersSectionedAdapter extends
+		StickyListHeadersAdapter {
+
+	/**
+	 * @return
+	 * The number of sections in the data set.
+	 */
+	int getSectionCount();
+
+	/**
+	 * @param section
+	 * The index of the section, between 0 and getSectionCount() - 1.
+	 * @return
+	 * The position of the first item of the section.
+	 */
+	int getSectionStart(int section);
+
+	/**
+	 * @param section
+	 * The index of the section, between 0 and getSectionCount() - 1.
+	 * @return
+	 * The header id shared by all items of the section.
+	 */
+	long getSectionHeaderId(int section);
+}
@@ -0,0 +1,50 @@
+package com.emilsjolander.components.stickylistheaders;
+
+/**
+ * A {@link StickyListHeadersAdapter} which can hand over its header ids as
+ * they are at one point in time, to be read from a background thread while
+ * the adapter itself goes on being used on the ui thread. Only adapters which
+ * implement this have their sections built in the background, see
+ * {@link StickyListHeadersListView#setBuildingSectionsAsync(boolean)}.
+ */
+public interface StickyListHeadersSnapshotAdapter extends
+		StickyListHeadersAdapter {
+
+	/**
+	 * The header ids of a data set which doesn't change anymore, e.g. a copy
+	 * of them or a cursor of its own. Nothing else of the adapter is used
+	 * while it is read.
+	 */
+	interface HeaderIdSnapshot {
+
+		/**
+		 * Get the header ids of count items starting at position. Called on
+		 * a background thread.
+		 *
+		 * @param position
+		 * The position of the first item within the data set the snapshot
+		 * was taken of.
+		 * @param count
+		 * The number of items, they are all within that data set.
+		 * @param headerIds
+		 * The array to fill, the header id of the item at position + i goes
+		 * into headerIds[i]. It is at least count long.
+		 */
+		void getHeaderIds(int position, int count, long[] headerIds);
+
+		/**
+		 * Called on the ui thread once the snapshot isn't needed anymore,
+		 * whether it has been read completely or not.
+		 */
+		void release();
+	}
+
+	/**
+	 * Called on the ui thread after the data set has changed, before the list
+	 * reads anything else of it.
+	 *
+	 * @return
+	 * The header ids of the first getCount() items as they are now.
+	 */
+	HeaderIdSnapshot getHeaderIdSnapshot();
+}
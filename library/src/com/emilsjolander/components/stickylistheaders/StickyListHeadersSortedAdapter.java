@@ -0,0 +1,148 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import java.util.Collections;
+import java.util.List;
+
+import android.widget.BaseAdapter;
+
+/**
+ * A {@link StickyListHeadersSectionedAdapter} over a list which is sorted by
+ * its section key, so that all items of a section are next to each other.
+ * Instead of looking at every item the end of each section is found by
+ * galloping ahead and then binary searching, which takes O(log n) key lookups
+ * per section.
+ * <p>
+ * The section key of an item, which a {@link SectionKeyExtractor} given to
+ * the constructor finds, is used as its header id.
+ */
+public abstract class StickyListHeadersSortedAdapter<T> extends BaseAdapter
+		implements StickyListHeadersSectionedAdapter {
+
+	public interface SectionKeyExtractor<T> {
+
+		/**
+		 * @param item
+		 * An item of the list.
+		 * @return
+		 * The key the list is sorted by, all items with the same key are in
+		 * the same section.
+		 */
+		public long getSectionKey(T item);
+	}
+
+	private final SectionIndex sectionIndex = new SectionIndex();
+	private final SectionKeyExtractor<? super T> sectionKeyExtractor;
+	private List<T> items;
+
+	public StickyListHeadersSortedAdapter(List<T> items,
+			SectionKeyExtractor<? super T> sectionKeyExtractor) {
+		if (sectionKeyExtractor == null) {
+			throw new IllegalArgumentException(
+					"A section key extractor is needed");
+		}
+		this.items = items;
+		this.sectionKeyExtractor = sectionKeyExtractor;
+		findSections();
+	}
+
+	/**
+	 * Replace the items, the new list must be sorted by section key as well.
+	 */
+	public void setItems(List<T> items) {
+		this.items = items;
+		notifyDataSetChanged();
+	}
+
+	public List<T> getItems() {
+		return items == null ? Collections.<T> emptyList() : items;
+	}
+
+	/**
+	 * Call this after changing the list in place as well, the sections are
+	 * found again before any observer hears about the change.
+	 */
+	@Override
+	public void notifyDataSetChanged() {
+		findSections();
+		super.notifyDataSetChanged();
+	}
+
+	private void findSections() {
+		List<T> items = getItems();
+		int count = items.size();
+		sectionIndex.reset(count);
+		int start = 0;
+		while (start < count) {
+			long key = sectionKeyExtractor.getSectionKey(items.get(start));
+			int end = findSectionEnd(items, start, key);
+			sectionIndex.appendSection(end - start, key);
+			start = end;
+		}
+	}
+
+	/**
+	 * @return the position after the last item with the given key, the item at
+	 *         start has that key
+	 */
+	private int findSectionEnd(List<T> items, int start, long key) {
+		int count = items.size();
+		// gallop until an item with another key or the end is passed
+		int low = start;
+		int step = 1;
+		int high = start + step;
+		while (high < count
+				&& sectionKeyExtractor.getSectionKey(items.get(high)) == key) {
+			low = high;
+			step <<= 1;
+			high = start + step;
+		}
+		high = Math.min(high, count);
+		// the item at low has the key, the one at high doesn't or is the end
+		while (high - low > 1) {
+			int mid = (low + high) >>> 1;
+			if (sectionKeyExtractor.getSectionKey(items.get(mid)) == key) {
+				low = mid;
+			} else {
+				high = mid;
+			}
+		}
+		return high;
+	}
+
+	@Override
+	public int getCount() {
+		return getItems().size();
+	}
+
+	@Override
+	public T getItem(int position) {
+		return getItems().get(position);
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return position;
+	}
+
+	@Override
+	public long getHeaderId(int position) {
+		return sectionIndex.getHeaderIdOfSection(sectionIndex
+				.getSectionForItem(position));
+	}
+
+	@Override
+	public int getSectionCount() {
+		return sectionIndex.getSectionCount();
+	}
+
+	@Override
+	public int getSectionStart(int section) {
+		return sectionIndex.getSectionStart(section);
+	}
+
+	@Override
+	public long getSectionHeaderId(int section) {
+		return sectionIndex.getHeaderIdOfSection(section);
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Times the phases reported to a
+ * {@link StickyListHeadersListView.MetricsListener} and marks them as
+ * android.os.Trace sections so they show up in systrace too. Trace only exists
+ * from Jelly Bean MR2, it is looked up once through reflection and left out
+ * where it is missing. Only used while a listener is set, and only on the ui
+ * thread.
+ */
+final class Tracing {
+
+	private static final Method beginSection;
+	private static final Method endSection;
+	private static final Object[] NO_ARGS = new Object[0];
+	// reused so that tracing allocates nothing
+	private static final Object[] sectionName = new Object[1];
+
+	static {
+		Method begin = null;
+		Method end = null;
+		try {
+			Class<?> trace = Class.forName("android.os.Trace");
+			begin = trace.getMethod("beginSection", String.class);
+			end = trace.getMethod("endSection");
+		} catch (ClassNotFoundException e) {
+			// too old for systrace sections
+		} catch (NoSuchMethodException e) {
+			begin = null;
+			end = null;
+		}
+		beginSection = begin;
+		endSection = end;
+	}
+
+	private Tracing() {
+	}
+
+	/**
+	 * Start a trace section with the given name.
+	 *
+	 * @return the time to pass to {@link #end(long)}
+	 */
+	static long begin(String name) {
+		sectionName[0] = name;
+		invoke(beginSection, sectionName);
+		sectionName[0] = null;
+		return System.nanoTime();
+	}
+
+	/**
+	 * End the section started last.
+	 *
+	 * @return the nanoseconds since start
+	 */
+	static long end(long start) {
+		long duration = System.nanoTime() - start;
+		invoke(endSection, NO_ARGS);
+		return duration;
+	}
+
+	private static void invoke(Method method, Object[] args) {
+		if (method == null) {
+			return;
+		}
+		try {
+			method.invoke(null, args);
+		} catch (IllegalAccessException e) {
+			// both methods are public
+		} catch (InvocationTargetException e) {
+			// neither throws
+		}
+	}
+
+}
@@ -0,0 +1,157 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * The row used when headers are drawn as decorations: an item with, if it is
+ * the first item of its section, the section's header laid out above it. The
+ * row takes the item's position in the list so no positions are shifted by
+ * headers. Header rows are wrapper views without an item.
+ * <p>
+ * The header can be lent to the sticky header while the row is under the top
+ * of the list, the row keeps the space it took up until it is handed back.
+ */
+final class WrapperView extends ViewGroup {
+
+	private View item;
+	private View header;
+	private View spareHeader;
+	private View lentHeader;
+	private int lentHeaderHeight;
+	private ViewGroup.LayoutParams lentHeaderParams;
+
+	WrapperView(Context context) {
+		super(context);
+	}
+
+	View getItem() {
+		return item;
+	}
+
+	View getHeader() {
+		return header;
+	}
+
+	boolean hasHeader() {
+		return header != null;
+	}
+
+	/**
+	 * @return the header, or the last one this row had, to be rebound
+	 */
+	View getReusableHeader() {
+		return header != null ? header : spareHeader;
+	}
+
+	/**
+	 * Take the header out of the row without requesting a layout, the row
+	 * stays as high as it was.
+	 */
+	View lendHeader() {
+		View header = this.header;
+		lentHeader = header;
+		lentHeaderHeight = header.getHeight();
+		lentHeaderParams = header.getLayoutParams();
+		this.header = null;
+		removeViewInLayout(header);
+		return header;
+	}
+
+	/**
+	 * @return whether header has been lent out by this row and the row hasn't
+	 *         been rebound since
+	 */
+	boolean isLendingHeader(View header) {
+		return header != null && lentHeader == header;
+	}
+
+	void returnHeader() {
+		View header = lentHeader;
+		lentHeader = null;
+		header.setLayoutParams(lentHeaderParams);
+		lentHeaderParams = null;
+		this.header = header;
+		addView(header);
+	}
+
+	/**
+	 * Rebind the row, a lent header is then left with whoever has it.
+	 */
+	void update(View item, View header) {
+		lentHeader = null;
+		lentHeaderParams = null;
+		if (this.item != item) {
+			if (this.item != null) {
+				removeView(this.item);
+			}
+			this.item = item;
+			if (item != null) {
+				addView(item);
+			}
+		}
+		if (this.header != header) {
+			if (this.header != null) {
+				removeView(this.header);
+				spareHeader = this.header;
+			}
+			this.header = header;
+			if (header != null) {
+				if (header == spareHeader) {
+					spareHeader = null;
+				}
+				addView(header);
+			}
+		}
+	}
+
+	@Override
+	protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+		int width = MeasureSpec.getSize(widthMeasureSpec);
+		int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec(width,
+				MeasureSpec.EXACTLY);
+		int height = 0;
+		if (header != null) {
+			header.measure(childWidthMeasureSpec,
+					getChildHeightMeasureSpec(header));
+			height += header.getMeasuredHeight();
+		} else if (lentHeader != null) {
+			height += lentHeaderHeight;
+		}
+		if (item != null) {
+			item.measure(childWidthMeasureSpec,
+					getChildHeightMeasureSpec(item));
+			height += item.getMeasuredHeight();
+		}
+		setMeasuredDimension(width, height);
+	}
+
+	/**
+	 * Children get the height they ask for, like rows of a list do.
+	 */
+	private static int getChildHeightMeasureSpec(View child) {
+		ViewGroup.LayoutParams params = child.getLayoutParams();
+		if (params != null && params.height > 0) {
+			return MeasureSpec.makeMeasureSpec(params.height,
+					MeasureSpec.EXACTLY);
+		}
+		return MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+	}
+
+	@Override
+	protected void onLayout(boolean changed, int l, int t, int r, int b) {
+		int width = r - l;
+		int top = 0;
+		if (header != null) {
+			header.layout(0, 0, width, header.getMeasuredHeight());
+			top = header.getMeasuredHeight();
+		} else if (lentHeader != null) {
+			top = lentHeaderHeight;
+		}
+		if (item != null) {
+			item.layout(0, top, width, top + item.getMeasuredHeight());
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.database.DataSetObserver;
+
+/**
+ * A position mapping patched from the delegate's range notifications is the
+ * one a wrapper scanning the delegate from scratch finds.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class AdapterWrapperPatchTest {
+
+	private static final DataSetObserver OBSERVER = new DataSetObserver() {
+	};
+
+	@Test
+	public void moveOnlyReadsTheMovedItem() {
+		TestAdapter adapter = new TestAdapter(RuntimeEnvironment.application,
+				100, 10);
+		StickyListHeadersAdapterWrapper wrapper = wrap(adapter, true, true);
+		wrapper.getHeaderCount();
+		adapter.resetCounts();
+		// out of its section into the middle of another one
+		adapter.moveItem(5, 62);
+		// patched rather than scanned again
+		wrapper.getHeaderCount();
+		assertEquals(1, adapter.headerIdReads);
+		assertSameMapping(adapter, wrapper, true, true);
+	}
+
+	@Test
+	public void moveSplittingAndMergingSections() {
+		TestAdapter adapter = new TestAdapter(RuntimeEnvironment.application,
+				9, 3);
+		StickyListHeadersAdapterWrapper wrapper = wrap(adapter, true, true);
+		wrapper.getHeaderCount();
+		// 0 0 0 1 1 1 2 2 2 -> 0 0 0 1 2 1 1 2 2
+		adapter.moveItem(6, 4);
+		assertSameMapping(adapter, wrapper, true, true);
+		// -> 0 0 0 1 1 1 2 2 2
+		adapter.moveItem(4, 6);
+		assertSameMapping(adapter, wrapper, true, true);
+		// the only item of a section moved to the end
+		adapter.moveItem(0, 8);
+		adapter.moveItem(0, 8);
+		adapter.moveItem(0, 8);
+		assertSameMapping(adapter, wrapper, true, true);
+	}
+
+	@Test
+	public void randomChanges() {
+		randomChanges(new Random(3), true, true);
+	}
+
+	@Test
+	public void randomChangesWithoutDividerRows() {
+		randomChanges(new Random(5), true, false);
+	}
+
+	@Test
+	public void randomChangesWithoutHeaderRows() {
+		randomChanges(new Random(8), false, false);
+	}
+
+	private static void randomChanges(Random random, boolean headerRows,
+			boolean dividerRows) {
+		for (int run = 0; run < 30; run++) {
+			TestAdapter adapter = new TestAdapter(
+					RuntimeEnvironment.application, 1 + random.nextInt(80),
+					1 + random.nextInt(6));
+			StickyListHeadersAdapterWrapper wrapper = wrap(adapter,
+					headerRows, dividerRows);
+			for (int step = 0; step < 15; step++) {
+				// patch a table which is scanned up to some point
+				int count = wrapper.getCount();
+				if (count > 0) {
+					wrapper.getItemViewType(random.nextInt(count));
+				}
+				changeRandomly(random, adapter);
+				assertSameMapping(adapter, wrapper, headerRows, dividerRows);
+			}
+		}
+	}
+
+	private static void changeRandomly(Random random, TestAdapter adapter) {
+		int size = adapter.getCount();
+		int position = random.nextInt(size + 1);
+		int count = random.nextInt(Math.min(size - position, 4) + 1);
+		switch (random.nextInt(5)) {
+		case 0:
+			adapter.insertItems(position, 1 + random.nextInt(3));
+			break;
+		case 1:
+			adapter.insertHeaderIds(position, randomHeaderIds(random, 1 + random
+					.nextInt(3)));
+			break;
+		case 2:
+			if (size > count) {
+				adapter.removeItems(position, count);
+			}
+			break;
+		case 3:
+			adapter.changeHeaderIds(position, randomHeaderIds(random, count));
+			break;
+		default:
+			if (size > 1) {
+				adapter.moveItem(random.nextInt(size), random.nextInt(size));
+			}
+			break;
+		}
+	}
+
+	private static long[] randomHeaderIds(Random random, int count) {
+		long[] headerIds = new long[count];
+		long headerId = random.nextInt(20);
+		for (int i = 0; i < count; i++) {
+			if (random.nextBoolean()) {
+				headerId = random.nextInt(20);
+			}
+			headerIds[i] = headerId;
+		}
+		return headerIds;
+	}
+
+	/**
+	 * A wrapper with a registered observer, which keeps its position mapping
+	 * between calls.
+	 */
+	private static StickyListHeadersAdapterWrapper wrap(TestAdapter adapter,
+			boolean headerRows, boolean dividerRows) {
+		StickyListHeadersAdapterWrapper wrapper = new StickyListHeadersAdapterWrapper(
+				RuntimeEnvironment.application, adapter);
+		wrapper.setHeaderRows(headerRows);
+		wrapper.setDividerRows(dividerRows);
+		wrapper.getViewTypeCount();
+		wrapper.registerDataSetObserver(OBSERVER);
+		return wrapper;
+	}
+
+	private static void assertSameMapping(TestAdapter adapter,
+			StickyListHeadersAdapterWrapper patched, boolean headerRows,
+			boolean dividerRows) {
+		StickyListHeadersAdapterWrapper scanned = wrap(adapter, headerRows,
+				dividerRows);
+		try {
+			assertEquals(scanned.getCount(), patched.getCount());
+			assertEquals(scanned.getHeaderCount(), patched.getHeaderCount());
+			for (int position = 0; position < scanned.getCount(); position++) {
+				String message = "position " + position;
+				int viewType = scanned.getItemViewType(position);
+				assertEquals(message, viewType,
+						patched.getItemViewType(position));
+				assertEquals(message, scanned.getHeaderId(position),
+						patched.getHeaderId(position));
+				assertEquals(message, scanned.isHeader(position),
+						patched.isHeader(position));
+				if (viewType != scanned.headerViewType
+						&& viewType != scanned.dividerViewType) {
+					assertEquals(message,
+							scanned.getRealPositionDisregardingHeadersAndDividers(position),
+							patched.getRealPositionDisregardingHeadersAndDividers(position));
+				}
+			}
+		} finally {
+			scanned.unregisterDataSetObserver(OBSERVER);
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * The fast scroller indexes the array of sections with what the section
+ * lookups return, they have to agree.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class AdapterWrapperSectionsTest {
+
+	@Test
+	public void everySectionHasALabelWithHeaderRows() {
+		everySectionHasALabel(true);
+	}
+
+	@Test
+	public void everySectionHasALabelWithoutHeaderRows() {
+		everySectionHasALabel(false);
+	}
+
+	private static void everySectionHasALabel(boolean headerRows) {
+		StickyListHeadersAdapterWrapper wrapper = new StickyListHeadersAdapterWrapper(
+				RuntimeEnvironment.application, new TestAdapter(
+						RuntimeEnvironment.application, 95, 10));
+		wrapper.setHeaderRows(headerRows);
+		Object[] sections = wrapper.getSections();
+		assertEquals(10, sections.length);
+		int lastSection = 0;
+		for (int position = 0; position < wrapper.getCount(); position++) {
+			int section = wrapper.getSectionForPosition(position);
+			assertTrue("position " + position, section >= 0
+					&& section < sections.length);
+			assertTrue("position " + position, section >= lastSection);
+			assertTrue("position " + position,
+					wrapper.getPositionForSection(section) <= position);
+			lastSection = section;
+		}
+		assertEquals(sections.length - 1, lastSection);
+		for (int section = 0; section < sections.length; section++) {
+			assertEquals(section, wrapper.getSectionForPosition(wrapper
+					.getPositionForSection(section)));
+		}
+	}
+}
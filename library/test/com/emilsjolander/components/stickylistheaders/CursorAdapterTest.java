@@ -0,0 +1,175 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DataSetObserver;
+import android.database.MatrixCursor;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+/**
+ * Sections come from the sections cursor, or from the data cursor itself when
+ * it is changed on its own.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class CursorAdapterTest {
+
+	private static final String HEADER_ID = "header_id";
+	private static final String ITEM_COUNT = "item_count";
+
+	private static class CursorAdapter extends StickyListHeadersCursorAdapter {
+
+		CursorAdapter(Cursor c, Cursor sections) {
+			super(RuntimeEnvironment.application, c, sections, HEADER_ID,
+					ITEM_COUNT);
+		}
+
+		@Override
+		public View newView(Context context, Cursor cursor, ViewGroup parent) {
+			return new TextView(context);
+		}
+
+		@Override
+		public void bindView(View view, Context context, Cursor cursor) {
+			((TextView) view).setText(cursor.getString(1));
+		}
+
+		@Override
+		public View newHeaderView(Context context, Cursor cursor,
+				ViewGroup parent) {
+			return new TextView(context);
+		}
+
+		@Override
+		public void bindHeaderView(View view, Context context, Cursor cursor) {
+			((TextView) view).setText(String.valueOf(cursor.getLong(2)));
+		}
+	}
+
+	/**
+	 * One row per header id, with the header id as a column.
+	 */
+	private static Cursor data(long... headerIds) {
+		MatrixCursor cursor = new MatrixCursor(new String[] { "_id", "name",
+				HEADER_ID });
+		for (int i = 0; i < headerIds.length; i++) {
+			cursor.addRow(new Object[] { i, "item " + i, headerIds[i] });
+		}
+		return cursor;
+	}
+
+	/**
+	 * Pairs of header id and item count.
+	 */
+	private static Cursor sections(long... sections) {
+		MatrixCursor cursor = new MatrixCursor(new String[] { HEADER_ID,
+				ITEM_COUNT });
+		for (int i = 0; i < sections.length; i += 2) {
+			cursor.addRow(new Object[] { sections[i], sections[i + 1] });
+		}
+		return cursor;
+	}
+
+	private static void assertSections(CursorAdapter adapter,
+			long... headerIds) {
+		assertEquals(headerIds.length, adapter.getCount());
+		int section = -1;
+		for (int i = 0; i < headerIds.length; i++) {
+			if (i == 0 || headerIds[i] != headerIds[i - 1]) {
+				section++;
+				assertEquals(i, adapter.getSectionStart(section));
+				assertEquals(headerIds[i], adapter.getSectionHeaderId(section));
+			}
+			assertEquals(headerIds[i], adapter.getHeaderId(i));
+		}
+		assertEquals(section + 1, adapter.getSectionCount());
+	}
+
+	@Test
+	public void sectionsAreReadFromTheSectionsCursor() {
+		CursorAdapter adapter = new CursorAdapter(data(1, 1, 1, 2, 3, 3, 3),
+				sections(1, 3, 2, 1, 3, 3));
+		assertSections(adapter, 1, 1, 1, 2, 3, 3, 3);
+	}
+
+	@Test
+	public void changeCursorsReadsTheNewSections() {
+		Cursor old = data(1, 2);
+		CursorAdapter adapter = new CursorAdapter(old, sections(1, 1, 2, 1));
+		adapter.changeCursors(data(5, 5, 6), sections(5, 2, 6, 1));
+		assertSections(adapter, 5, 5, 6);
+		assertTrue(old.isClosed());
+	}
+
+	@Test
+	public void swapCursorsReturnsTheOldCursor() {
+		Cursor old = data(1, 2);
+		CursorAdapter adapter = new CursorAdapter(old, sections(1, 1, 2, 1));
+		assertSame(old, adapter.swapCursors(data(4), sections(4, 1)));
+		assertFalse(old.isClosed());
+		assertSections(adapter, 4);
+	}
+
+	@Test
+	public void changeCursorScansTheDataCursor() {
+		Cursor old = data(1, 2);
+		final CursorAdapter adapter = new CursorAdapter(old, sections(1, 1,
+				2, 1));
+		final int[] sectionCounts = new int[1];
+		adapter.registerDataSetObserver(new DataSetObserver() {
+
+			@Override
+			public void onChanged() {
+				sectionCounts[0] = adapter.getSectionCount();
+			}
+		});
+		adapter.changeCursor(data(7, 8, 8, 9, 9, 9));
+		// observers hear of the data once its sections are known
+		assertEquals(3, sectionCounts[0]);
+		assertSections(adapter, 7, 8, 8, 9, 9, 9);
+		assertTrue(old.isClosed());
+	}
+
+	@Test
+	public void swapCursorScansTheDataCursor() {
+		Cursor old = data(1, 2);
+		CursorAdapter adapter = new CursorAdapter(old, sections(1, 1, 2, 1));
+		assertSame(old, adapter.swapCursor(data(3, 3, 4)));
+		assertFalse(old.isClosed());
+		assertSections(adapter, 3, 3, 4);
+	}
+
+	@Test
+	public void nullCursorClearsTheSections() {
+		CursorAdapter adapter = new CursorAdapter(data(1, 2),
+				sections(1, 1, 2, 1));
+		adapter.changeCursor(null);
+		assertEquals(0, adapter.getCount());
+		assertEquals(0, adapter.getSectionCount());
+	}
+
+	@Test
+	public void headerViewIsBoundToItsRow() {
+		CursorAdapter adapter = new CursorAdapter(data(1, 1, 2),
+				sections(1, 2, 2, 1));
+		FrameLayout parent = new FrameLayout(RuntimeEnvironment.application);
+		TextView header = (TextView) adapter.getHeaderView(2, null, parent);
+		assertEquals("2", header.getText().toString());
+		assertSame(header, adapter.getHeaderView(0, header, parent));
+		assertEquals("1", header.getText().toString());
+	}
+}
@@ -0,0 +1,163 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import java.util.ArrayList;
+
+import org.robolectric.Robolectric;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.widget.AbsListView;
+import android.widget.FrameLayout;
+
+/**
+ * Drives a {@link StickyListHeadersListView} frame by frame the way the view
+ * system would, without a looper running on its own: every frame scrolls,
+ * runs the pre-draw pass and draws. Counts what the list reports through its
+ * metrics listener.
+ */
+class ListHarness implements StickyListHeadersListView.MetricsListener {
+
+	static final int WIDTH = 480;
+	static final int HEIGHT = 800;
+
+	final StickyListHeadersListView list;
+	final TestAdapter adapter;
+	private final FrameLayout root;
+	private final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH,
+			HEIGHT, Bitmap.Config.ARGB_8888));
+	int stickyHeaderBinds;
+	int stickyHeaderMeasures;
+	int recycleMisses;
+
+	ListHarness(TestAdapter adapter) {
+		this(adapter, false);
+	}
+
+	ListHarness(TestAdapter adapter, boolean drawingStickyHeaderInList) {
+		this.adapter = adapter;
+		ActivityController<Activity> controller = Robolectric
+				.buildActivity(Activity.class).create();
+		Activity activity = controller.get();
+		root = new FrameLayout(activity);
+		list = new StickyListHeadersListView(activity);
+		list.setDrawingStickyHeaderInList(drawingStickyHeaderInList);
+		// Robolectric's shadow keeps the list's scroll listener to itself,
+		// it is the list which needs to hear of scrolling
+		ReflectionHelpers.setField(AbsListView.class, list,
+				"mOnScrollListener", list);
+		root.addView(list, new FrameLayout.LayoutParams(
+				ViewGroup.LayoutParams.MATCH_PARENT,
+				ViewGroup.LayoutParams.MATCH_PARENT));
+		activity.setContentView(root);
+		// attaches the list, which moves it into its frame, after that
+		// nothing runs unless a test says so
+		controller.start().resume().visible();
+		ShadowLooper.pauseMainLooper();
+		list.setMetricsListener(this);
+		list.setAdapter(adapter);
+		layout();
+		draw();
+	}
+
+	StickyListHeadersListViewWrapper frame() {
+		return (StickyListHeadersListViewWrapper) root.getChildAt(0);
+	}
+
+	void layout() {
+		root.measure(MeasureSpec.makeMeasureSpec(WIDTH, MeasureSpec.EXACTLY),
+				MeasureSpec.makeMeasureSpec(HEIGHT, MeasureSpec.EXACTLY));
+		root.layout(0, 0, WIDTH, HEIGHT);
+	}
+
+	/**
+	 * What happens for each frame: a layout pass if one has been requested,
+	 * the pre-draw pass, in which the sticky header is updated, and drawing.
+	 */
+	void draw() {
+		if (root.isLayoutRequested()) {
+			layout();
+		}
+		list.getViewTreeObserver().dispatchOnPreDraw();
+		// Robolectric's View.draw() only draws the background, what the list
+		// and its frame draw themselves is drawn through dispatchDraw()
+		if (list.getParent() != root) {
+			dispatchDraw((ViewGroup) list.getParent());
+		}
+		dispatchDraw(list);
+	}
+
+	private void dispatchDraw(ViewGroup view) {
+		ReflectionHelpers.callInstanceMethod(view, "dispatchDraw",
+				ClassParameter.from(Canvas.class, canvas));
+	}
+
+	/**
+	 * Scrolls the content up by dy pixels, or down for a negative dy, in one
+	 * frame.
+	 */
+	void scrollBy(int dy) {
+		ReflectionHelpers.callInstanceMethod(list, "trackMotionScroll",
+				ClassParameter.from(int.class, -dy),
+				ClassParameter.from(int.class, -dy));
+		draw();
+	}
+
+	/**
+	 * Runs what is waiting for the ui thread to be idle.
+	 */
+	void idle() {
+		MessageQueue queue = Looper.myQueue();
+		ArrayList<MessageQueue.IdleHandler> idleHandlers = ReflectionHelpers
+				.getField(queue, "mIdleHandlers");
+		for (MessageQueue.IdleHandler idleHandler : new ArrayList<MessageQueue.IdleHandler>(
+				idleHandlers)) {
+			if (!idleHandler.queueIdle()) {
+				queue.removeIdleHandler(idleHandler);
+			}
+		}
+	}
+
+	void resetCounts() {
+		adapter.resetCounts();
+		stickyHeaderBinds = 0;
+		stickyHeaderMeasures = 0;
+		recycleMisses = 0;
+	}
+
+	@Override
+	public void onSectionIndexBuilt(int rowCount, long duration) {
+	}
+
+	@Override
+	public void onSectionsScanned(int rowCount, long duration) {
+	}
+
+	@Override
+	public void onStickyHeaderBound(long duration) {
+		stickyHeaderBinds++;
+	}
+
+	@Override
+	public void onStickyHeaderMeasured(long duration) {
+		stickyHeaderMeasures++;
+	}
+
+	@Override
+	public void onScrollChanged(long duration) {
+	}
+
+	@Override
+	public void onRecycleMiss(int viewType) {
+		recycleMisses++;
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * Scrolls a list frame by frame and checks what each frame costs: how many
+ * views are bound, measured and inflated, and what is allocated.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class ScrollSimulationTest {
+
+	private static final int ITEM_COUNT = 1000;
+	private static final int ITEMS_PER_SECTION = 10;
+	private static final int SECTION_HEIGHT = ITEMS_PER_SECTION
+			* TestAdapter.ITEM_HEIGHT + TestAdapter.HEADER_HEIGHT;
+	private static final int FLING_FRAME = 60;
+	private static final int FLING_FRAMES = 300;
+
+	private static ListHarness harness(boolean drawingStickyHeaderInList) {
+		return new ListHarness(new TestAdapter(RuntimeEnvironment.application,
+				ITEM_COUNT, ITEMS_PER_SECTION), drawingStickyHeaderInList);
+	}
+
+	@Test
+	public void flingStaysWithinBudget() {
+		fling(harness(false));
+	}
+
+	@Test
+	public void flingStaysWithinBudgetWithStickyHeaderInList() {
+		fling(harness(true));
+	}
+
+	private static void fling(ListHarness harness) {
+		// fills the recycler and the header cache
+		for (int i = 0; i < 20; i++) {
+			harness.scrollBy(FLING_FRAME);
+		}
+		harness.resetCounts();
+		int stickyHeaderBinds = 0;
+		for (int i = 0; i < FLING_FRAMES; i++) {
+			harness.scrollBy(FLING_FRAME);
+			String frame = "frame " + i;
+			// a row is at least an item high, so at most one more than fits
+			// into the distance scrolled can come into view
+			assertTrue(frame, harness.adapter.itemBinds <= FLING_FRAME
+					/ TestAdapter.ITEM_HEIGHT + 2);
+			assertEquals(frame, 0, harness.adapter.getInflations());
+			assertEquals(frame, 0, harness.recycleMisses);
+			// a frame scrolls less than a section, so it crosses at most one
+			assertTrue(frame, harness.stickyHeaderBinds <= 1);
+			assertTrue(frame, harness.stickyHeaderMeasures <= 1);
+			stickyHeaderBinds += harness.stickyHeaderBinds;
+			harness.resetCounts();
+		}
+		assertTrue(stickyHeaderBinds <= FLING_FRAME * FLING_FRAMES
+				/ SECTION_HEIGHT + 1);
+	}
+
+	@Test
+	public void sectionCrossingsAreFreeOnceIdle() {
+		crossSections(harness(false));
+	}
+
+	@Test
+	public void sectionCrossingsAreFreeOnceIdleWithStickyHeaderInList() {
+		crossSections(harness(true));
+	}
+
+	private static void crossSections(ListHarness harness) {
+		for (int direction : new int[] { 1, -1 }) {
+			for (int i = 0; i < 100; i++) {
+				harness.idle();
+				harness.resetCounts();
+				harness.scrollBy(direction * 17);
+				String frame = (direction > 0 ? "down " : "up ") + i;
+				assertEquals(frame, 0, harness.stickyHeaderBinds);
+				assertEquals(frame, 0, harness.stickyHeaderMeasures);
+			}
+		}
+	}
+
+	@Test
+	public void insertingItemsRebindsOnlyWhatIsVisible() {
+		ListHarness harness = harness(false);
+		harness.scrollBy(3 * SECTION_HEIGHT + 100);
+		harness.idle();
+		harness.resetCounts();
+		harness.adapter.insertItems(ITEMS_PER_SECTION * 4 + 2, 3);
+		harness.draw();
+		assertTrue(harness.adapter.itemBinds <= harness.list.getChildCount());
+		assertEquals(0, harness.adapter.getInflations());
+		assertTrue(harness.stickyHeaderBinds <= 1);
+		assertTrue(harness.stickyHeaderMeasures <= 1);
+	}
+
+	@Test
+	public void scrollPassAllocatesNothing() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+		ListHarness harness = harness(false);
+		for (int i = 0; i < 200; i++) {
+			harness.scrollBy(7);
+			// a frame in which the list has moved but no header has changed
+			StickyListHeadersListView list = harness.list;
+			ReflectionHelpers.setField(list, "scrollChangePending", true);
+			ReflectionHelpers.setField(list, "lastFirstChildTop",
+					Integer.MIN_VALUE);
+			long before = threads.getThreadAllocatedBytes(thread);
+			list.getViewTreeObserver().dispatchOnPreDraw();
+			long allocated = threads.getThreadAllocatedBytes(thread) - before;
+			// the first passes run before the jit has caught up
+			if (i >= 100) {
+				assertEquals("pass " + i, 0, allocated);
+			}
+		}
+	}
+}
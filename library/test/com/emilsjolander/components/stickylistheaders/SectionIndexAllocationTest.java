@@ -0,0 +1,108 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * The position translation runs for every row of every frame, a fling over
+ * it must not allocate.
+ */
+public class SectionIndexAllocationTest {
+
+	private static final int ITEM_COUNT = 100000;
+	private static final int CHUNK = 1000;
+	private static final int VISIBLE_ROWS = 20;
+
+	private ThreadMXBean threads;
+	private final SectionIndex sectionIndex = new SectionIndex();
+
+	@Before
+	public void setUp() {
+		assumeTrue(ManagementFactory.getThreadMXBean() instanceof ThreadMXBean);
+		threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+		assumeTrue(threads.isThreadAllocatedMemorySupported());
+		threads.setThreadAllocatedMemoryEnabled(true);
+	}
+
+	@Test
+	public void flingWithDividerRowsAllocatesNothing() {
+		build(true);
+		assertFlingAllocatesNothing();
+	}
+
+	@Test
+	public void flingWithoutDividerRowsAllocatesNothing() {
+		build(false);
+		assertFlingAllocatesNothing();
+	}
+
+	/**
+	 * Sections of 1 to 30 items, appended in chunks like a scan does.
+	 */
+	private void build(boolean dividerRows) {
+		sectionIndex.setDividerRows(dividerRows);
+		sectionIndex.reset(ITEM_COUNT);
+		long[] headerIds = new long[CHUNK];
+		long headerId = 0;
+		int left = 1;
+		for (int start = 0; start < ITEM_COUNT; start += CHUNK) {
+			for (int i = 0; i < CHUNK; i++) {
+				if (--left == 0) {
+					headerId++;
+					left = (int) (headerId * 7 % 30) + 1;
+				}
+				headerIds[i] = headerId;
+			}
+			sectionIndex.appendItems(headerIds, CHUNK);
+		}
+		assertEquals(ITEM_COUNT, sectionIndex.getScannedCount());
+	}
+
+	private void assertFlingAllocatesNothing() {
+		// lets the jit compile the lookups first
+		for (int i = 0; i < 5; i++) {
+			fling();
+		}
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		long checksum = fling();
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		assertEquals(0, allocated);
+		// keeps the lookups from being optimized away
+		assertEquals(checksum, fling());
+	}
+
+	/**
+	 * Looks up every visible row of every frame of a fling through the whole
+	 * list and back, the way the list and the adapter do.
+	 */
+	private long fling() {
+		long checksum = 0;
+		int wrappedCount = sectionIndex.getWrappedCount();
+		for (int direction = 1; direction >= -1; direction -= 2) {
+			for (int frame = 0; frame < wrappedCount; frame += 3) {
+				int first = direction > 0 ? frame : wrappedCount - 1 - frame;
+				int last = Math.min(first + VISIBLE_ROWS, wrappedCount);
+				for (int position = first; position < last; position++) {
+					int section = sectionIndex
+							.getSectionForWrappedPosition(position);
+					int mapped = sectionIndex.getMappedPosition(position);
+					int real = sectionIndex.getRealPosition(position);
+					checksum += section + mapped + real;
+					if (mapped >= 0) {
+						checksum += sectionIndex.getSectionForItem(mapped);
+						checksum += sectionIndex.getWrappedPosition(mapped);
+					}
+				}
+			}
+		}
+		return checksum;
+	}
+}
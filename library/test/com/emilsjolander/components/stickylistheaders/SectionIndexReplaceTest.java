@@ -0,0 +1,221 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * A table patched through {@link SectionIndex#replaceItems} holds the same
+ * sections as one scanned from scratch.
+ */
+public class SectionIndexReplaceTest {
+
+	@Test
+	public void insertIntoSection() {
+		assertReplacement(ids(1, 1, 2, 2), 1, 0, ids(1, 1));
+	}
+
+	@Test
+	public void insertNewSectionBetweenSections() {
+		assertReplacement(ids(1, 1, 2, 2), 2, 0, ids(5));
+	}
+
+	@Test
+	public void insertSplittingASection() {
+		assertReplacement(ids(1, 1, 1, 2), 1, 0, ids(7, 7));
+	}
+
+	@Test
+	public void insertAtTheStart() {
+		assertReplacement(ids(1, 2), 0, 0, ids(1));
+		assertReplacement(ids(1, 2), 0, 0, ids(0));
+	}
+
+	@Test
+	public void removeWholeSection() {
+		assertReplacement(ids(1, 2, 2, 3), 1, 2, ids());
+	}
+
+	@Test
+	public void removeSectionBetweenEqualOnes() {
+		// the sections either side merge
+		assertReplacement(ids(1, 1, 2, 1, 1), 2, 1, ids());
+	}
+
+	@Test
+	public void removeFirstItems() {
+		assertReplacement(ids(1, 1, 2, 3), 0, 3, ids());
+	}
+
+	@Test
+	public void changeHeaderIds() {
+		assertReplacement(ids(1, 1, 2, 2, 3), 1, 3, ids(2, 2, 2));
+		assertReplacement(ids(1, 2, 3, 4), 1, 2, ids(1, 4));
+	}
+
+	@Test
+	public void replaceReachingTheEnd() {
+		assertReplacement(ids(1, 1, 2, 2), 2, 2, ids(3));
+		assertReplacement(ids(1, 1, 2, 2), 4, 0, ids(2, 3));
+	}
+
+	@Test
+	public void randomReplacementsOfAScannedTable() {
+		randomReplacements(new Random(4), false);
+	}
+
+	@Test
+	public void randomReplacementsOfAPartlyScannedTable() {
+		randomReplacements(new Random(7), true);
+	}
+
+	private static void randomReplacements(Random random, boolean partly) {
+		for (int run = 0; run < 300; run++) {
+			List<Long> items = randomHeaderIds(random, random.nextInt(60));
+			SectionIndex sectionIndex = new SectionIndex();
+			sectionIndex.reset(items.size());
+			int scanned = partly ? random.nextInt(items.size() + 1) : items
+					.size();
+			for (int i = 0; i < scanned; i++) {
+				sectionIndex.appendItem(items.get(i));
+			}
+			for (int step = 0; step < 20; step++) {
+				replaceRandomly(random, items, sectionIndex);
+			}
+			assertScanned(items, sectionIndex);
+		}
+	}
+
+	/**
+	 * An insertion, removal, change, replacement or move, applied both to
+	 * the items and to the table.
+	 */
+	private static void replaceRandomly(Random random, List<Long> items,
+			SectionIndex sectionIndex) {
+		int size = items.size();
+		int from = random.nextInt(size + 1);
+		int oldCount = random.nextInt(size - from + 1);
+		int newCount;
+		switch (random.nextInt(5)) {
+		case 0:
+			oldCount = 0;
+			newCount = 1 + random.nextInt(5);
+			break;
+		case 1:
+			newCount = 0;
+			break;
+		case 2:
+			newCount = oldCount;
+			break;
+		case 3:
+			newCount = random.nextInt(6);
+			break;
+		default:
+			if (size < 2) {
+				return;
+			}
+			// a move is a removal followed by an insertion
+			int to = random.nextInt(size);
+			from = random.nextInt(size);
+			Long moved = items.remove(from);
+			replace(sectionIndex, from, 1, new long[0]);
+			items.add(to, moved);
+			replace(sectionIndex, to, 0, new long[] { moved });
+			return;
+		}
+		List<Long> replacement = randomHeaderIds(random, newCount);
+		// now and then take on the header id of a neighbour
+		if (newCount > 0 && from > 0 && random.nextBoolean()) {
+			replacement.set(0, items.get(from - 1));
+		}
+		List<Long> range = items.subList(from, from + oldCount);
+		range.clear();
+		range.addAll(replacement);
+		replace(sectionIndex, from, oldCount, toArray(replacement));
+	}
+
+	private static void replace(SectionIndex sectionIndex, int from,
+			int oldCount, long[] newHeaderIds) {
+		// the table only reads as many as it is told
+		long[] buffer = new long[newHeaderIds.length + 3];
+		System.arraycopy(newHeaderIds, 0, buffer, 0, newHeaderIds.length);
+		sectionIndex.replaceItems(from, oldCount, buffer, newHeaderIds.length);
+	}
+
+	private static void assertReplacement(long[] before, int from,
+			int oldCount, long[] newHeaderIds) {
+		List<Long> items = new ArrayList<Long>();
+		for (long headerId : before) {
+			items.add(headerId);
+		}
+		SectionIndex sectionIndex = new SectionIndex();
+		sectionIndex.reset(items.size());
+		sectionIndex.appendItems(before, before.length);
+		List<Long> range = items.subList(from, from + oldCount);
+		range.clear();
+		for (long headerId : newHeaderIds) {
+			range.add(headerId);
+		}
+		replace(sectionIndex, from, oldCount, newHeaderIds);
+		assertScanned(items, sectionIndex);
+	}
+
+	/**
+	 * Scans what the table hasn't yet and compares it to a table scanned
+	 * from scratch.
+	 */
+	private static void assertScanned(List<Long> items,
+			SectionIndex sectionIndex) {
+		assertEquals(items.size(), sectionIndex.getItemCount());
+		for (int i = sectionIndex.getScannedCount(); i < items.size(); i++) {
+			sectionIndex.appendItem(items.get(i));
+		}
+		SectionIndex scanned = new SectionIndex();
+		scanned.reset(items.size());
+		for (long headerId : items) {
+			scanned.appendItem(headerId);
+		}
+		String message = items.toString();
+		assertEquals(message, scanned.getSectionCount(),
+				sectionIndex.getSectionCount());
+		for (int section = 0; section < scanned.getSectionCount(); section++) {
+			assertEquals(message, scanned.getSectionStart(section),
+					sectionIndex.getSectionStart(section));
+			assertEquals(message, scanned.getHeaderIdOfSection(section),
+					sectionIndex.getHeaderIdOfSection(section));
+		}
+		for (int i = 0; i < items.size(); i++) {
+			assertEquals(message, scanned.getSectionForItem(i),
+					sectionIndex.getSectionForItem(i));
+		}
+	}
+
+	private static List<Long> randomHeaderIds(Random random, int count) {
+		List<Long> headerIds = new ArrayList<Long>();
+		long headerId = random.nextInt(4);
+		for (int i = 0; i < count; i++) {
+			// runs of equal header ids, with some coming back later
+			if (random.nextInt(3) == 0) {
+				headerId = random.nextInt(4);
+			}
+			headerIds.add(headerId);
+		}
+		return headerIds;
+	}
+
+	private static long[] toArray(List<Long> headerIds) {
+		long[] array = new long[headerIds.size()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = headerIds.get(i);
+		}
+		return array;
+	}
+
+	private static long[] ids(long... headerIds) {
+		return headerIds;
+	}
+}
@@ -0,0 +1,132 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * The sections found by galloping through a sorted list are the ones a look at
+ * every item finds.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class SortedAdapterTest {
+
+	private static final StickyListHeadersSortedAdapter.SectionKeyExtractor<Long> KEY = new StickyListHeadersSortedAdapter.SectionKeyExtractor<Long>() {
+
+		@Override
+		public long getSectionKey(Long item) {
+			return item;
+		}
+	};
+
+	private static class SortedAdapter extends
+			StickyListHeadersSortedAdapter<Long> {
+
+		SortedAdapter(List<Long> items) {
+			super(items, KEY);
+		}
+
+		@Override
+		public View getView(int position, View convertView, ViewGroup parent) {
+			return null;
+		}
+
+		@Override
+		public View getHeaderView(int position, View convertView,
+				ViewGroup parent) {
+			return null;
+		}
+	}
+
+	@Test
+	public void emptyList() {
+		assertSectionsFoundByScan(new ArrayList<Long>());
+		assertSectionsFoundByScan(null);
+	}
+
+	@Test
+	public void oneSection() {
+		assertSectionsFoundByScan(Collections.nCopies(1, 7L));
+		assertSectionsFoundByScan(Collections.nCopies(1000, 7L));
+	}
+
+	@Test
+	public void sectionsOfEveryLength() {
+		List<Long> items = new ArrayList<Long>();
+		// lengths around the powers of two the gallop steps through
+		for (int length = 1; length <= 70; length++) {
+			items.addAll(Collections.nCopies(length, (long) length * 3));
+		}
+		assertSectionsFoundByScan(items);
+	}
+
+	@Test
+	public void randomSections() {
+		Random random = new Random(42);
+		for (int i = 0; i < 200; i++) {
+			List<Long> items = new ArrayList<Long>();
+			int sections = random.nextInt(50);
+			long key = random.nextInt(10) - 5;
+			for (int section = 0; section < sections; section++) {
+				// mostly short sections, now and then a long one
+				int length = random.nextInt(8) == 0 ? 1 + random.nextInt(500)
+						: 1 + random.nextInt(5);
+				items.addAll(Collections.nCopies(length, key));
+				key += 1 + random.nextInt(3);
+			}
+			assertSectionsFoundByScan(items);
+		}
+	}
+
+	@Test
+	public void setItemsFindsTheSectionsAgain() {
+		List<Long> items = new ArrayList<Long>(Collections.nCopies(5, 1L));
+		SortedAdapter adapter = new SortedAdapter(items);
+		items.addAll(Collections.nCopies(3, 2L));
+		adapter.notifyDataSetChanged();
+		assertSameSections(items, adapter);
+		List<Long> other = new ArrayList<Long>(Collections.nCopies(2, 0L));
+		other.addAll(Collections.nCopies(4, 9L));
+		adapter.setItems(other);
+		assertSameSections(other, adapter);
+	}
+
+	private static void assertSectionsFoundByScan(List<Long> items) {
+		assertSameSections(items, new SortedAdapter(items));
+	}
+
+	private static void assertSameSections(List<Long> items,
+			SortedAdapter adapter) {
+		if (items == null) {
+			items = Collections.emptyList();
+		}
+		List<Integer> starts = new ArrayList<Integer>();
+		for (int i = 0; i < items.size(); i++) {
+			if (i == 0 || !items.get(i).equals(items.get(i - 1))) {
+				starts.add(i);
+			}
+		}
+		assertEquals(starts.size(), adapter.getSectionCount());
+		for (int section = 0; section < starts.size(); section++) {
+			int start = starts.get(section);
+			assertEquals(start, adapter.getSectionStart(section));
+			assertEquals((long) items.get(start),
+					adapter.getSectionHeaderId(section));
+		}
+		for (int i = 0; i < items.size(); i++) {
+			assertEquals((long) items.get(i), adapter.getHeaderId(i));
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import android.view.View;
+
+/**
+ * The sticky header takes clicks, a header which goes back to the adapter to
+ * be shown in a row mustn't.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class StickyHeaderClickTest {
+
+	@Test
+	public void spareHeadersAreNotClickable() {
+		spareHeadersAreNotClickable(false);
+	}
+
+	@Test
+	public void spareHeadersAreNotClickableWithStickyHeaderInList() {
+		spareHeadersAreNotClickable(true);
+	}
+
+	private static void spareHeadersAreNotClickable(
+			boolean drawingStickyHeaderInList) {
+		TestAdapter adapter = new TestAdapter(RuntimeEnvironment.application,
+				200, 10);
+		ListHarness harness = new ListHarness(adapter,
+				drawingStickyHeaderInList);
+		// binds and caches sticky headers for the sections around
+		for (int i = 0; i < 60; i++) {
+			harness.scrollBy(23);
+			harness.idle();
+		}
+		// hands the sticky header and the cached ones to the adapter
+		adapter.insertItems(0, 1);
+		StickyListHeadersAdapterWrapper wrapper = (StickyListHeadersAdapterWrapper) harness.list
+				.getAdapter();
+		int spareHeaders = 0;
+		for (View header = wrapper.takeSpareHeader(); header != null; header = wrapper
+				.takeSpareHeader()) {
+			assertFalse(header.isClickable());
+			spareHeaders++;
+		}
+		assertTrue(spareHeaders > 0);
+	}
+}
@@ -0,0 +1,53 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Rows hidden by an opaque sticky header aren't drawn.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class StickyHeaderOverdrawTest {
+
+	private static int scrollThroughSections(boolean opaqueHeaders,
+			boolean drawingStickyHeaderInList) {
+		TestAdapter adapter = new TestAdapter(RuntimeEnvironment.application,
+				100, 10);
+		adapter.setOpaqueHeaders(opaqueHeaders);
+		ListHarness harness = new ListHarness(adapter,
+				drawingStickyHeaderInList);
+		harness.list.resetSkippedChildDrawCount();
+		// small steps, so that rows come to lie entirely under the header
+		for (int i = 0; i < 200; i++) {
+			harness.scrollBy(7);
+		}
+		return harness.list.getSkippedChildDrawCount();
+	}
+
+	@Test
+	public void rowsUnderAnOpaqueHeaderAreSkipped() {
+		assertTrue(scrollThroughSections(true, false) > 0);
+	}
+
+	@Test
+	public void rowsUnderAnOpaqueHeaderInListAreSkipped() {
+		assertTrue(scrollThroughSections(true, true) > 0);
+	}
+
+	@Test
+	public void rowsUnderATransparentHeaderAreDrawn() {
+		assertEquals(0, scrollThroughSections(false, false));
+	}
+
+	@Test
+	public void rowsUnderATransparentHeaderInListAreDrawn() {
+		assertEquals(0, scrollThroughSections(false, true));
+	}
+}
@@ -0,0 +1,57 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * A list which doesn't clip to its padding shows its first header in a row
+ * at the top, not as the sticky header drawn in the padding above it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class StickyHeaderPaddingTest {
+
+	private static final int PADDING_TOP = 4 * TestAdapter.HEADER_HEIGHT;
+
+	@Test
+	public void noStickyHeaderAtTheTop() {
+		noStickyHeaderAtTheTop(false);
+	}
+
+	@Test
+	public void noStickyHeaderAtTheTopWithStickyHeaderInList() {
+		noStickyHeaderAtTheTop(true);
+	}
+
+	private static void noStickyHeaderAtTheTop(
+			boolean drawingStickyHeaderInList) {
+		ListHarness harness = new ListHarness(new TestAdapter(
+				RuntimeEnvironment.application, 100, 10),
+				drawingStickyHeaderInList);
+		harness.list.setClipToPadding(false);
+		harness.list.setPadding(0, PADDING_TOP, 0, 0);
+		// lays the list out from the top again
+		harness.list.setAdapter(harness.adapter);
+		harness.draw();
+		assertEquals(PADDING_TOP, harness.list.getChildAt(0).getTop());
+		assertEquals(0, getStickyHeaderBottomPosition(harness));
+		// the first header row goes through the padding and off the top,
+		// after which the sticky header shows
+		harness.scrollBy(PADDING_TOP + TestAdapter.HEADER_HEIGHT);
+		assertTrue(getStickyHeaderBottomPosition(harness) > 0);
+		harness.scrollBy(-PADDING_TOP - TestAdapter.HEADER_HEIGHT);
+		assertEquals(0, getStickyHeaderBottomPosition(harness));
+	}
+
+	private static int getStickyHeaderBottomPosition(ListHarness harness) {
+		return ReflectionHelpers.<Integer> callInstanceMethod(harness.list,
+				"getStickyHeaderBottomPosition");
+	}
+}
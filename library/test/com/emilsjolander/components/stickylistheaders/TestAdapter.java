@@ -0,0 +1,176 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import java.util.Arrays;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * An adapter of fixed height rows which counts what the list asks of it.
+ */
+class TestAdapter extends StickyListHeadersBaseAdapter {
+
+	static final int ITEM_HEIGHT = 40;
+	static final int HEADER_HEIGHT = 50;
+
+	private final Context context;
+	private long[] headerIds;
+	private boolean opaqueHeaders = true;
+	int itemBinds;
+	int headerBinds;
+	int itemInflations;
+	int headerInflations;
+	int headerIdReads;
+
+	TestAdapter(Context context, int itemCount, int itemsPerSection) {
+		this.context = context;
+		headerIds = new long[itemCount];
+		for (int i = 0; i < itemCount; i++) {
+			headerIds[i] = i / itemsPerSection;
+		}
+	}
+
+	void setOpaqueHeaders(boolean opaqueHeaders) {
+		this.opaqueHeaders = opaqueHeaders;
+	}
+
+	/**
+	 * Inserts count items at position, into the section of the item before
+	 * them.
+	 */
+	void insertItems(int position, int count) {
+		long[] headerIds = new long[count];
+		Arrays.fill(headerIds, this.headerIds[Math.max(position - 1, 0)]);
+		replaceHeaderIds(position, 0, headerIds);
+		notifyItemRangeInserted(position, count);
+	}
+
+	/**
+	 * Inserts one item for each of headerIds at position.
+	 */
+	void insertHeaderIds(int position, long... headerIds) {
+		replaceHeaderIds(position, 0, headerIds);
+		notifyItemRangeInserted(position, headerIds.length);
+	}
+
+	void removeItems(int position, int count) {
+		replaceHeaderIds(position, count, new long[0]);
+		notifyItemRangeRemoved(position, count);
+	}
+
+	/**
+	 * Moves the items from position on to the sections of headerIds.
+	 */
+	void changeHeaderIds(int position, long... headerIds) {
+		replaceHeaderIds(position, headerIds.length, headerIds);
+		notifyItemRangeChanged(position, headerIds.length);
+	}
+
+	void moveItem(int fromPosition, int toPosition) {
+		long headerId = this.headerIds[fromPosition];
+		replaceHeaderIds(fromPosition, 1, new long[0]);
+		replaceHeaderIds(toPosition, 0, new long[] { headerId });
+		notifyItemMoved(fromPosition, toPosition);
+	}
+
+	private void replaceHeaderIds(int position, int oldCount,
+			long[] newHeaderIds) {
+		long[] headerIds = new long[this.headerIds.length - oldCount
+				+ newHeaderIds.length];
+		System.arraycopy(this.headerIds, 0, headerIds, 0, position);
+		System.arraycopy(newHeaderIds, 0, headerIds, position,
+				newHeaderIds.length);
+		System.arraycopy(this.headerIds, position + oldCount, headerIds,
+				position + newHeaderIds.length, this.headerIds.length
+						- position - oldCount);
+		this.headerIds = headerIds;
+	}
+
+	void resetCounts() {
+		itemBinds = 0;
+		headerBinds = 0;
+		itemInflations = 0;
+		headerInflations = 0;
+		headerIdReads = 0;
+	}
+
+	int getInflations() {
+		return itemInflations + headerInflations;
+	}
+
+	@Override
+	public int getCount() {
+		return headerIds.length;
+	}
+
+	@Override
+	public Object getItem(int position) {
+		return null;
+	}
+
+	@Override
+	public long getItemId(int position) {
+		return position;
+	}
+
+	@Override
+	public View getView(int position, View convertView, ViewGroup parent) {
+		itemBinds++;
+		if (convertView == null) {
+			itemInflations++;
+			convertView = new FixedHeightView(context, ITEM_HEIGHT);
+		}
+		return convertView;
+	}
+
+	@Override
+	public View getHeaderView(int position, View convertView, ViewGroup parent) {
+		headerBinds++;
+		FixedHeightView header = (FixedHeightView) convertView;
+		if (header == null) {
+			headerInflations++;
+			header = new FixedHeightView(context, HEADER_HEIGHT);
+		}
+		header.setBackgroundColor(opaqueHeaders ? Color.WHITE
+				: Color.TRANSPARENT);
+		header.opaque = opaqueHeaders;
+		return header;
+	}
+
+	@Override
+	public long getHeaderId(int position) {
+		headerIdReads++;
+		return headerIds[position];
+	}
+
+	/**
+	 * Always as high as it was made, whatever it is measured with.
+	 */
+	static class FixedHeightView extends View {
+
+		private final int height;
+		// Robolectric doesn't tell from the background whether a view is
+		// opaque
+		boolean opaque;
+
+		FixedHeightView(Context context, int height) {
+			super(context);
+			this.height = height;
+		}
+
+		@Override
+		protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+			setMeasuredDimension(
+					getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec),
+					resolveSize(height, heightMeasureSpec));
+		}
+
+		@Override
+		public boolean isOpaque() {
+			return opaque;
+		}
+	}
+
+}
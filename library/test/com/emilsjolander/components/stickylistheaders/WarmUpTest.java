@@ -0,0 +1,66 @@
+package com.emilsjolander.components.stickylistheaders;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+/**
+ * Views warmed up while the ui thread is idle are used for the first screen,
+ * which then creates none.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 18)
+public class WarmUpTest {
+
+	private static final int ROWS = ListHarness.HEIGHT
+			/ TestAdapter.ITEM_HEIGHT + 1;
+
+	@Test
+	public void firstScreenHasNoRecycleMisses() {
+		firstScreenHasNoRecycleMisses(false);
+	}
+
+	@Test
+	public void firstScreenOfDecoratedRowsHasNoRecycleMisses() {
+		firstScreenHasNoRecycleMisses(true);
+	}
+
+	private static void firstScreenHasNoRecycleMisses(
+			boolean drawingHeadersAsDecorations) {
+		ListHarness harness = new ListHarness(new TestAdapter(
+				RuntimeEnvironment.application, 100, 10));
+		StickyListHeadersListView list = harness.list;
+		list.setDrawingHeadersAsDecorations(drawingHeadersAsDecorations);
+		// a new adapter starts out without anything to recycle
+		TestAdapter adapter = new TestAdapter(RuntimeEnvironment.application,
+				100, 10);
+		list.setAdapter(adapter);
+		list.warmUpViews(4, ROWS, ROWS);
+		for (int i = 0; i < 3 * ROWS + 4; i++) {
+			harness.idle();
+		}
+		assertTrue(adapter.getInflations() > 0);
+		adapter.resetCounts();
+		harness.resetCounts();
+		harness.draw();
+		assertTrue(list.getChildCount() > ROWS / 2);
+		assertEquals(0, harness.recycleMisses);
+		assertEquals(0, adapter.getInflations());
+	}
+
+	@Test
+	public void firstScreenWithoutWarmUpHasRecycleMisses() {
+		ListHarness harness = new ListHarness(new TestAdapter(
+				RuntimeEnvironment.application, 100, 10));
+		harness.resetCounts();
+		harness.list.setAdapter(new TestAdapter(
+				RuntimeEnvironment.application, 100, 10));
+		harness.draw();
+		assertEquals(harness.list.getChildCount(), harness.recycleMisses);
+	}
+}